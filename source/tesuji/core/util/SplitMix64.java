@@ -0,0 +1,54 @@
+package tesuji.core.util;
+
+/**
+ * Small and fast generator of well-mixed 64-bit numbers, after the SplitMix64 algorithm.
+ * It's used to derive seeds rather than to generate the random numbers of the playouts themselves.
+ * Consecutive numbers are statistically independent even when the seeds they're derived from are not,
+ * like consecutive integers, so seeding a MersenneTwisterFast with each number gives independent streams.<br>
+ * <br>
+ * Like MersenneTwisterFast it's not thread-safe, each thread should split off its own instance.
+ */
+public class SplitMix64
+{
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+	private long _state;
+
+	public SplitMix64(long seed)
+	{
+		_state = seed;
+	}
+
+	public long nextLong()
+	{
+		_state += GOLDEN_GAMMA;
+		return mix(_state);
+	}
+
+	/**
+	 * @return a new generator, of which the numbers are independent of the ones generated by this one.
+	 */
+	public SplitMix64 split()
+	{
+		return new SplitMix64(nextLong());
+	}
+
+	/**
+	 * Seed a MersenneTwisterFast with the next number, using all of its 64 bits.
+	 * Seeding with a long only uses the lowest 32 bits.
+	 *
+	 * @param random
+	 */
+	public void seed(MersenneTwisterFast random)
+	{
+		long seed = nextLong();
+		random.setSeed(new int[] { (int)(seed>>>32), (int)seed });
+	}
+
+	private static long mix(long z)
+	{
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+}
@@ -0,0 +1,293 @@
+package tesuji.games.general.search;
+
+import org.apache.log4j.Logger;
+
+import static tesuji.games.general.ColorConstant.BLACK;
+
+/**
+ * TimeManager for main time followed by Canadian byo-yomi, or by nothing for sudden death.<br>
+ * <br>
+ * In the main time the time left is divided over the number of moves still expected, estimated
+ * from the number of empty points. When byo-yomi follows, the time of a byo-yomi stone is added to
+ * that, as the main time may run out as long as the byo-yomi periods are used the same way.
+ * In byo-yomi the time left in the period is divided over the stones left to play.<br>
+ * <br>
+ * A safety-margin is kept for every move, for the time it takes to send the move and for
+ * the search to stop on a heavily loaded machine.
+ */
+public class ByoYomiTimeManager
+	implements TimeManager
+{
+	private static Logger _logger = Logger.getLogger(ByoYomiTimeManager.class);
+
+	/**
+	 * Don't stop early before this fraction of the nominal time, as the number of
+	 * playouts per second and the order of the moves are still unreliable before that.
+	 */
+	private static final int MINIMUM_FRACTION = 10;
+
+	private int _mainTime;
+	private int _byoYomiTime;
+	private int _nrByoYomiStones;
+	private boolean _isTimeLimited;
+
+	private long[] _timeLeft = new long[2];
+	private int[] _stonesLeft = new int[2];
+
+	private int _colorIndex;
+	private long _nominalTime;
+	private long _maximumTime;
+
+	private long _safetyMargin = 1000;
+	private double _movesPerEmptyPoint = 0.4;
+	private int _minimumMovesLeft = 10;
+	private double _extensionFactor = 2.0;
+	private double _closeRatio = 0.8;
+
+	/*
+	 * (non-Javadoc)
+	 * @see tesuji.games.general.search.TimeManager#setTimeSettings(int, int, int)
+	 */
+	public void setTimeSettings(int mainTime, int byoYomiTime, int nrByoYomiStones)
+	{
+		_mainTime = mainTime;
+		_byoYomiTime = byoYomiTime;
+		_nrByoYomiStones = nrByoYomiStones;
+		_isTimeLimited = !(byoYomiTime>0 && nrByoYomiStones==0) && (mainTime>0 || byoYomiTime>0);
+		clear();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see tesuji.games.general.search.TimeManager#setTimeLeft(byte, int, int)
+	 */
+	public void setTimeLeft(byte color, int timeLeft, int nrStonesLeft)
+	{
+		int index = getIndex(color);
+		_timeLeft[index] = timeLeft*1000L;
+		_stonesLeft[index] = nrStonesLeft;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see tesuji.games.general.search.TimeManager#clear()
+	 */
+	public void clear()
+	{
+		for (int i=0; i<2; i++)
+		{
+			if (_mainTime>0 || !hasByoYomi())
+			{
+				_timeLeft[i] = _mainTime*1000L;
+				_stonesLeft[i] = 0;
+			}
+			else
+				startByoYomiPeriod(i);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see tesuji.games.general.search.TimeManager#isTimeLimited()
+	 */
+	public boolean isTimeLimited()
+	{
+		return _isTimeLimited;
+	}
+
+	private boolean hasByoYomi()
+	{
+		return _byoYomiTime>0 && _nrByoYomiStones>0;
+	}
+
+	private static int getIndex(byte color)
+	{
+		return (color==BLACK)? 0 : 1;
+	}
+
+	private void startByoYomiPeriod(int index)
+	{
+		_timeLeft[index] = _byoYomiTime*1000L;
+		_stonesLeft[index] = _nrByoYomiStones;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see tesuji.games.general.search.TimeManager#startSearch(byte, int)
+	 */
+	public void startSearch(byte color, int nrEmptyPoints)
+	{
+		_colorIndex = getIndex(color);
+		if (!_isTimeLimited)
+		{
+			_nominalTime = 0;
+			_maximumTime = 0;
+			return;
+		}
+
+		long timeLeft = _timeLeft[_colorIndex];
+		int stonesLeft = _stonesLeft[_colorIndex];
+		if (stonesLeft==0)
+		{
+			int nrMovesLeft = Math.max(_minimumMovesLeft, (int)(nrEmptyPoints*_movesPerEmptyPoint));
+			long availableTime = timeLeft - _safetyMargin;
+			_nominalTime = availableTime / nrMovesLeft;
+			if (hasByoYomi())
+			{
+				// Running out of main time during this move starts a byo-yomi period of which this is the first stone.
+				long byoYomiStoneTime = _byoYomiTime*1000L / _nrByoYomiStones;
+				_nominalTime += byoYomiStoneTime;
+				availableTime += byoYomiStoneTime;
+			}
+			_maximumTime = Math.min((long)(_nominalTime*_extensionFactor), availableTime);
+		}
+		else
+		{
+			long availableTime = timeLeft - stonesLeft*_safetyMargin;
+			_nominalTime = availableTime / stonesLeft;
+			// Time used extra now has to come from the stones still to play in the period,
+			// so don't take more than half of what's left for them.
+			long extraTime = (availableTime - _nominalTime) / 2;
+			_maximumTime = _nominalTime + Math.min((long)(_nominalTime*(_extensionFactor-1.0)), extraTime);
+		}
+		if (_nominalTime<0)
+			_nominalTime = 0;
+		if (_maximumTime<_nominalTime)
+			_maximumTime = _nominalTime;
+
+		_logger.info("Time left "+timeLeft+" ms for "+stonesLeft+" stones - nominal time "+_nominalTime+" ms, maximum time "+_maximumTime+" ms");
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see tesuji.games.general.search.TimeManager#getNominalTime()
+	 */
+	public long getNominalTime()
+	{
+		return _nominalTime;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see tesuji.games.general.search.TimeManager#getMaximumTime()
+	 */
+	public long getMaximumTime()
+	{
+		return _maximumTime;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see tesuji.games.general.search.TimeManager#isDone(long, int, int, int)
+	 */
+	public boolean isDone(long elapsedTime, int nrPlayouts, int bestPlayouts, int secondBestPlayouts)
+	{
+		if (elapsedTime>=_maximumTime)
+			return true;
+
+		if (elapsedTime<_nominalTime)
+		{
+			if (elapsedTime<_nominalTime/MINIMUM_FRACTION || nrPlayouts==0)
+				return false;
+
+			// Stop when even all the playouts still to come in the nominal time can't make the second-best move overtake the best.
+			long remainingPlayouts = nrPlayouts * (_nominalTime-elapsedTime) / elapsedTime;
+			return bestPlayouts-secondBestPlayouts > remainingPlayouts;
+		}
+
+		// Past the nominal time, only continue while the second-best move is close.
+		return secondBestPlayouts < bestPlayouts*_closeRatio;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see tesuji.games.general.search.TimeManager#endSearch(long)
+	 */
+	public void endSearch(long elapsedTime)
+	{
+		if (!_isTimeLimited)
+			return;
+
+		int index = _colorIndex;
+		_timeLeft[index] -= elapsedTime;
+		if (_stonesLeft[index]==0)
+		{
+			if (_timeLeft[index]>=0 || !hasByoYomi())
+			{
+				if (_timeLeft[index]<0)
+					_timeLeft[index] = 0;
+				return;
+			}
+			// The main time ran out during this move, which was the first stone of the byo-yomi period.
+			long overtime = -_timeLeft[index];
+			startByoYomiPeriod(index);
+			_timeLeft[index] -= overtime;
+		}
+		_stonesLeft[index]--;
+		if (_stonesLeft[index]==0)
+			startByoYomiPeriod(index);
+	}
+
+	public long getSafetyMargin()
+	{
+		return _safetyMargin;
+	}
+
+	/**
+	 * @param milliseconds - the time kept in reserve for every move.
+	 */
+	public void setSafetyMargin(long milliseconds)
+	{
+		_safetyMargin = milliseconds;
+	}
+
+	public double getMovesPerEmptyPoint()
+	{
+		return _movesPerEmptyPoint;
+	}
+
+	/**
+	 * @param movesPerEmptyPoint - the number of moves still expected to play for each empty point.
+	 */
+	public void setMovesPerEmptyPoint(double movesPerEmptyPoint)
+	{
+		_movesPerEmptyPoint = movesPerEmptyPoint;
+	}
+
+	public int getMinimumMovesLeft()
+	{
+		return _minimumMovesLeft;
+	}
+
+	public void setMinimumMovesLeft(int nrMoves)
+	{
+		_minimumMovesLeft = nrMoves;
+	}
+
+	public double getExtensionFactor()
+	{
+		return _extensionFactor;
+	}
+
+	/**
+	 * @param factor - the maximum time as a multiple of the nominal time.
+	 */
+	public void setExtensionFactor(double factor)
+	{
+		_extensionFactor = factor;
+	}
+
+	public double getCloseRatio()
+	{
+		return _closeRatio;
+	}
+
+	/**
+	 * @param ratio - the search gets extended when the number of playouts of the second-best move
+	 * is at least this ratio of the number of playouts of the best move.
+	 */
+	public void setCloseRatio(double ratio)
+	{
+		_closeRatio = ratio;
+	}
+}
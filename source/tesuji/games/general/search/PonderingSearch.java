@@ -0,0 +1,55 @@
+/**
+ * Project: Tesuji Go Framework.<br>
+ * <br>
+ * <font color="#CC6600"><font size=-1> Copyright (c) 1985-2006 Mark Boon<br>
+ * All rights reserved.<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, and/or sell copies of the
+ * Software, and to permit persons to whom the Software is furnished to do so,
+ * provided that the above copyright notice(s) and this permission notice appear
+ * in all copies of the Software and that both the above copyright notice(s) and
+ * this permission notice appear in supporting documentation.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.<br>
+ * <br>
+ * <font color="#00000"><font size=+1>
+ * 
+ */
+
+package tesuji.games.general.search;
+
+import tesuji.games.general.Move;
+
+/**
+ * A search that can keep searching in the background while the opponent is thinking.
+ * What was found while pondering is kept for the next search, provided the position
+ * it leads to is still reachable after the move played by the opponent.
+ */
+public interface PonderingSearch<MoveType extends Move>
+	extends Search<MoveType>
+{
+	/**
+	 * Start searching the current position in the background. This returns immediately.
+	 * It keeps searching until stopPondering() is called or until it has used up a
+	 * reasonable amount of memory.
+	 * 
+	 * @param startColor - the color to move first in the current position
+	 */
+	public void startPondering(byte startColor);
+	
+	/**
+	 * Stop pondering and wait until all the search-threads are done. Nothing
+	 * happens when it's not pondering.
+	 */
+	public void stopPondering();
+	
+	public boolean isPondering();
+}
@@ -45,4 +45,6 @@ public class SearchProperties
 	public static final String NR_PROCESSORS =	"nr_processors";
 	public static final String TIME =			"time";
 	public static final String TIME_PER_MOVE =	"time_per_move";
+	public static final String VIRTUAL_LOSS =	"virtual_loss";
+	public static final String RANDOM_SEED =	"random_seed";
 }
@@ -0,0 +1,79 @@
+package tesuji.games.general.search;
+
+/**
+ * Decides how much time a search may spend on a move, based on the time-settings and the time left
+ * as received through GTP. Time-settings and time left are in seconds, like in GTP.
+ * The times handed out and passed in during a search are in milliseconds.<br>
+ * <br>
+ * A search calls startSearch() before it starts, then keeps asking isDone() while it's searching
+ * and finally calls endSearch() with the time it used, so the time left can be kept up to date
+ * also when no time left is received between moves.
+ */
+public interface TimeManager
+{
+	/**
+	 * Set the time-settings, which also resets the time left of both colors.
+	 * Like in GTP a byo-yomi time of more than zero with zero stones means there's no time-limit.
+	 *
+	 * @param mainTime - in seconds
+	 * @param byoYomiTime - the time of a byo-yomi period in seconds, zero for sudden death
+	 * @param nrByoYomiStones - the number of stones to play in a byo-yomi period
+	 */
+	public void setTimeSettings(int mainTime, int byoYomiTime, int nrByoYomiStones);
+
+	/**
+	 * @param color
+	 * @param timeLeft - the time left in seconds, either in the main time or in the current byo-yomi period
+	 * @param nrStonesLeft - the number of stones left to play in the current byo-yomi period, zero in the main time
+	 */
+	public void setTimeLeft(byte color, int timeLeft, int nrStonesLeft);
+
+	/**
+	 * Reset the time left of both colors to the time-settings, for a new game.
+	 */
+	public void clear();
+
+	/**
+	 * @return whether time-settings were received that limit the time.
+	 */
+	public boolean isTimeLimited();
+
+	/**
+	 * Compute the time to spend on the next move.
+	 *
+	 * @param color - the color to move
+	 * @param nrEmptyPoints - used to estimate the number of moves left to play
+	 */
+	public void startSearch(byte color, int nrEmptyPoints);
+
+	/**
+	 * @return the time in milliseconds the search is planned to take.
+	 */
+	public long getNominalTime();
+
+	/**
+	 * @return the time in milliseconds the search may take at most, when it gets extended.
+	 */
+	public long getMaximumTime();
+
+	/**
+	 * Decide whether the search can stop, based on the number of playouts of the two best moves
+	 * so far. It may stop before the nominal time when the best move can't be overtaken anymore,
+	 * or continue after it up to the maximum time when the two best moves are close.
+	 *
+	 * @param elapsedTime - the time in milliseconds spent so far
+	 * @param nrPlayouts - the number of playouts so far
+	 * @param bestPlayouts - the number of playouts of the move with the most playouts
+	 * @param secondBestPlayouts - the number of playouts of the move with the second most playouts
+	 *
+	 * @return whether the search should stop.
+	 */
+	public boolean isDone(long elapsedTime, int nrPlayouts, int bestPlayouts, int secondBestPlayouts);
+
+	/**
+	 * Deduct the time used from the time left of the color that was to move.
+	 *
+	 * @param elapsedTime - in milliseconds
+	 */
+	public void endSearch(long elapsedTime);
+}
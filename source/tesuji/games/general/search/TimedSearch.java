@@ -0,0 +1,14 @@
+package tesuji.games.general.search;
+
+import tesuji.games.general.Move;
+
+/**
+ * A search that leaves it to a TimeManager to decide how long to search for a move.
+ */
+public interface TimedSearch<MoveType extends Move>
+	extends Search<MoveType>
+{
+	public TimeManager getTimeManager();
+
+	public void setTimeManager(TimeManager timeManager);
+}
@@ -0,0 +1,142 @@
+/**
+ * Project: Tesuji Go Framework.<br>
+ * <br>
+ * <font color="#CC6600"><font size=-1> Copyright (c) 1985-2006 Mark Boon<br>
+ * All rights reserved.<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, and/or sell copies of the
+ * Software, and to permit persons to whom the Software is furnished to do so,
+ * provided that the above copyright notice(s) and this permission notice appear
+ * in all copies of the Software and that both the above copyright notice(s) and
+ * this permission notice appear in supporting documentation.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.<br>
+ * <br>
+ * <font color="#00000"><font size=+1>
+ * 
+ */
+
+
+package tesuji.games.go.benchmark;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.apache.log4j.Logger;
+
+import tesuji.games.go.common.GoMove;
+import tesuji.games.go.monte_carlo.MonteCarloAdministration;
+import tesuji.games.go.search.TranspositionTable;
+import tesuji.games.go.util.GoArray;
+import tesuji.games.model.BoardModel;
+
+/**
+ * Plays random games to see how often different positions get the same checksum.
+ * Besides the collisions of the full 64-bit checksums, which should be none, it counts the
+ * collisions of only the lower 32 bits. Since these happen often enough to measure, comparing
+ * them to what's expected of random numbers shows whether the checksums are distributed well.
+ * From that follows how often a TranspositionTable would mistake a position for another.
+ */
+public class ChecksumBenchmark
+{
+	private static Logger _logger = Logger.getLogger("MCBenchmark");
+	
+	private static final double TWO_TO_THE_32 = 4294967296.0;
+	private static final double TWO_TO_THE_64 = TWO_TO_THE_32*TWO_TO_THE_32;
+
+	public static void checkCollisions(MonteCarloAdministration<GoMove> administration, int nrPositions, int tableSize)
+	{
+		int boardSize = administration.getBoardSize();
+		HashMap<Long,byte[]> positionMap = new HashMap<Long,byte[]>(nrPositions*2);
+		long[] checksums = new long[nrPositions];
+		int nrDistinctPositions = 0;
+		int nrCollisions = 0;
+		int nrGames = 0;
+		
+		while (nrDistinctPositions<nrPositions)
+		{
+			administration.clear();
+			nrGames++;
+			while (nrDistinctPositions<nrPositions && administration.getNrPasses()<2 && !administration.isGameTooLong())
+			{
+				GoMove move = administration.selectSimulationMove();
+				administration.playMove(move);
+				move.recycle();
+				
+				long checksum = administration.getPositionalChecksum();
+				byte[] position = getPosition(administration, boardSize);
+				byte[] storedPosition = positionMap.get(checksum);
+				if (storedPosition==null)
+				{
+					positionMap.put(checksum, position);
+					checksums[nrDistinctPositions++] = checksum;
+				}
+				else if (!Arrays.equals(position, storedPosition))
+				{
+					nrCollisions++;
+					_logger.info("Checksum collision: "+Long.toHexString(checksum));
+				}
+			}
+		}
+		
+		double nrPairs = (double)nrDistinctPositions * (double)(nrDistinctPositions-1) / 2.0;
+		long nrShortCollisions = countShortCollisions(checksums, nrDistinctPositions);
+		int capacity = new TranspositionTable(tableSize).getCapacity();
+		
+		_logger.info("");
+		_logger.info("Testing checksums of '"+administration.getClass().getName()+"'");
+		_logger.info("  " + nrDistinctPositions + " positions in " + nrGames + " games");
+		_logger.info("  64-bit collisions: " + nrCollisions + " (expected " + nrPairs/TWO_TO_THE_64 + ")");
+		_logger.info("  32-bit collisions: " + nrShortCollisions + " (expected " + nrPairs/TWO_TO_THE_32 + ")");
+		// A lookup of a position that's not in the table goes wrong when any entry happens to have the same checksum.
+		_logger.info("  Wrong matches per billion lookups in a table of " + capacity + " entries: " + 1e9*capacity/TWO_TO_THE_64);
+	}
+	
+	/**
+	 * @return the stones on the board and the side to move, which identify a position apart from any ko.
+	 */
+	private static byte[] getPosition(MonteCarloAdministration<GoMove> administration, int boardSize)
+	{
+		BoardModel board = administration.getBoardModel();
+		byte[] position = new byte[boardSize*boardSize+1];
+		int i = 0;
+		for (int row=1; row<=boardSize; row++)
+			for (int col=1; col<=boardSize; col++)
+				position[i++] = board.get(GoArray.toXY(col, row));
+		position[i] = administration.getColorToMove();
+		return position;
+	}
+	
+	/**
+	 * Count the pairs of checksums that have the same lower 32 bits, by sorting on those bits.
+	 */
+	private static long countShortCollisions(long[] checksums, int nrChecksums)
+	{
+		long[] lowerBits = new long[nrChecksums];
+		for (int i=0; i<nrChecksums; i++)
+			lowerBits[i] = checksums[i] & 0xffffffffL;
+		Arrays.sort(lowerBits);
+		
+		long nrCollisions = 0;
+		int runLength = 1;
+		for (int i=1; i<=nrChecksums; i++)
+		{
+			if (i<nrChecksums && lowerBits[i]==lowerBits[i-1])
+				runLength++;
+			else
+			{
+				nrCollisions += (long)runLength*(runLength-1)/2;
+				runLength = 1;
+			}
+		}
+		return nrCollisions;
+	}
+}
@@ -50,6 +50,9 @@ public class MCBenchmarkSuite
 	private double _komi;
 	private int _nrPlayouts;
 	private int _nrProcessors;
+	private int _nrChecksumPositions;
+	private int _transpositionTableSize;
+	private int _randomSeed;
 
 	private List<MonteCarloAdministration<GoMove>> _mcList;
 	
@@ -78,13 +81,18 @@ public class MCBenchmarkSuite
 		_logger.info("# threads: \t" + _nrProcessors);
 		_logger.info("Board size: \t" + _boardSize);
 		_logger.info("Komi: \t\t" + _komi);
+		_logger.info("Random seed: \t" + _randomSeed);
 		_logger.info("");
 		for (MonteCarloAdministration<GoMove> mcAdministration : _mcList)
 		{
 			mcAdministration.set(GTPCommand.BOARDSIZE, Integer.toString(_boardSize));
 			mcAdministration.set(GTPCommand.KOMI, Double.toString(_komi));
+			if (_randomSeed!=0)
+				mcAdministration.setRandomSeed(_randomSeed);
 			MCPlayout<GoMove> playout = new MCPlayout<GoMove>(mcAdministration);
 			MCBenchmark.doPlayout(playout,_nrPlayouts,_nrProcessors);
+			if (_nrChecksumPositions>0)
+				ChecksumBenchmark.checkCollisions(mcAdministration,_nrChecksumPositions,_transpositionTableSize);
 		}		
 		_logger.info("");
 		_logger.info("Done.");
@@ -143,6 +151,36 @@ public class MCBenchmarkSuite
 		_nrProcessors = processors;
 	}
 
+	public int getNrChecksumPositions()
+	{
+		return _nrChecksumPositions;
+	}
+
+	public void setNrChecksumPositions(int positions)
+	{
+		_nrChecksumPositions = positions;
+	}
+
+	public int getTranspositionTableSize()
+	{
+		return _transpositionTableSize;
+	}
+
+	public void setTranspositionTableSize(int megabytes)
+	{
+		_transpositionTableSize = megabytes;
+	}
+
+	public int getRandomSeed()
+	{
+		return _randomSeed;
+	}
+
+	public void setRandomSeed(int seed)
+	{
+		_randomSeed = seed;
+	}
+
 	public List<MonteCarloAdministration<GoMove>> get_mcList()
 	{
 		return _mcList;
@@ -69,12 +69,14 @@ public class MCPlayout<MoveType extends Move>
 		Thread[] threads = new Thread[nrThreads];
 		for (int t=0; t<nrThreads; t++)
 		{
+			// The clones are made here rather than in the threads, so each thread
+			// gets the same random seed every run when the administration was seeded.
+			final MonteCarloAdministration<MoveType> playoutAdministration = _currentAdministration.createClone();
+			final MonteCarloAdministration<MoveType> playingAdministration = _currentAdministration.createClone();
 			threads[t] = new Thread(new Runnable()
 				{
 					public void run()
 	                {
-						MonteCarloAdministration<MoveType> playoutAdministration = _currentAdministration.createClone();
-						MonteCarloAdministration<MoveType> playingAdministration = _currentAdministration.createClone();
 						for (int i = 0; i < nrPlayouts/nrThreads;)
 						{
 							playingAdministration.copyDataFrom(_currentAdministration);
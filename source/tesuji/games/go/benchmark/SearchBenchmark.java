@@ -33,6 +33,7 @@ import tesuji.core.util.LoggerConfigurator;
 import tesuji.core.util.MemoryUtil;
 import tesuji.games.general.ColorConstant;
 import tesuji.games.general.search.Search;
+import tesuji.games.general.search.SearchProperties;
 import tesuji.games.go.common.GoMove;
 
 public class SearchBenchmark
@@ -71,4 +72,49 @@ public class SearchBenchmark
 	        e.printStackTrace();
         }		
 	}
+	
+	/**
+	 * Run the same search with 1 thread up to the given number of threads, doubling each time,
+	 * and report how the number of playouts per second scales with the number of threads.
+	 * 
+	 * @param search
+	 * @param nrPlayouts - the number of playouts to do per search.
+	 * @param maxNrThreads
+	 */
+	public static void doScaling(Search<GoMove> search, int nrPlayouts, int maxNrThreads)
+	{
+		_logger.info("");
+		_logger.info("Scaling of '"+search.getClass().getName()+"' with virtual loss "+search.getSearchProperties().getIntProperty(SearchProperties.VIRTUAL_LOSS));
+		double singleThreadRate = 0.0;
+        try
+        {
+        	for (int nrThreads=1; ; nrThreads*=2)
+        	{
+        		if (nrThreads>maxNrThreads)
+        			nrThreads = maxNrThreads;
+        		
+    			search.getSearchProperties().setIntProperty(SearchProperties.NR_NODES, nrPlayouts);
+    			search.getSearchProperties().setIntProperty(SearchProperties.NR_PROCESSORS, nrThreads);
+    			search.clear();
+    			
+    			long beforeTime = System.currentTimeMillis();
+    			search.doSearch(ColorConstant.BLACK);
+    			long afterTime = System.currentTimeMillis();
+    			
+    			double rate = ((double) nrPlayouts) / Math.max(1, afterTime-beforeTime);
+    			if (nrThreads==1)
+    				singleThreadRate = rate;
+    			_logger.info("  " + nrThreads + " threads: " + rate + " kpps, speed-up " + (rate/singleThreadRate));
+    			
+    			if (nrThreads==maxNrThreads)
+    				break;
+        	}
+        	search.clear();
+        }
+        catch (Exception e)
+        {
+        	_logger.error("Unexpected exception "+e.getClass()+": "+e.getMessage());
+	        e.printStackTrace();
+        }		
+	}
 }
@@ -49,6 +49,8 @@ public class SearchBenchmarkSuite
 	private double _komi;
 	private int _nrPlayouts;
 	private int _nrProcessors;
+	private boolean _reportScaling;
+	private int _randomSeed;
 
 	private List<Search<GoMove>> _searchList;
 	
@@ -77,6 +79,7 @@ public class SearchBenchmarkSuite
 		_logger.info("# processors: \t" + _nrProcessors);
 		_logger.info("Board size: \t\t" + _boardSize);
 		_logger.info("Komi: \t\t" + _komi);
+		_logger.info("Random seed: \t" + _randomSeed);
 		_logger.info("");
 		for (Search<GoMove> search : _searchList)
 		{
@@ -84,9 +87,15 @@ public class SearchBenchmarkSuite
 			search.getSearchProperties().setDoubleProperty(GoGameProperties.KOMI, _komi);
 			search.getSearchProperties().setIntProperty(SearchProperties.NR_NODES, _nrPlayouts);
 			search.getSearchProperties().setIntProperty(SearchProperties.NR_PROCESSORS, _nrProcessors);
+			search.getSearchProperties().setIntProperty(SearchProperties.RANDOM_SEED, _randomSeed);
 			Statistics.reset();
 			SearchBenchmark.doSearch(search);
 		}		
+		if (_reportScaling)
+		{
+			for (Search<GoMove> search : _searchList)
+				SearchBenchmark.doScaling(search, _nrPlayouts, _nrProcessors);
+		}
 		_logger.info("");
 		_logger.info("Nr pattern matches created: "+PatternMatchFactory.getSingleton().getFactoryReport());
 		_logger.info("Done.");
@@ -143,6 +152,26 @@ public class SearchBenchmarkSuite
 		_nrProcessors = nrProcessors;
 	}
 
+	public boolean getReportScaling()
+	{
+		return _reportScaling;
+	}
+
+	public void setReportScaling(boolean reportScaling)
+	{
+		_reportScaling = reportScaling;
+	}
+
+	public int getRandomSeed()
+	{
+		return _randomSeed;
+	}
+
+	public void setRandomSeed(int seed)
+	{
+		_randomSeed = seed;
+	}
+
 	public List<Search<GoMove>> get_mcList()
 	{
 		return _searchList;
@@ -43,8 +43,11 @@ import tesuji.games.general.MoveStack;
 import tesuji.games.general.provider.DataProviderList;
 import tesuji.games.general.renderer.DataRendererManager;
 import tesuji.games.general.renderer.DataSelector;
+import tesuji.games.general.search.PonderingSearch;
 import tesuji.games.general.search.Search;
 import tesuji.games.general.search.SearchProperties;
+import tesuji.games.general.search.TimeManager;
+import tesuji.games.general.search.TimedSearch;
 
 import tesuji.games.go.common.BasicGoMoveAdministration;
 import tesuji.games.go.common.GoEngineAdapter;
@@ -59,6 +62,8 @@ import tesuji.games.go.util.GoGameProperties;
 import tesuji.games.model.BoardModel;
 import tesuji.games.util.Console;
 
+import static tesuji.games.general.ColorConstant.*;
+
 /**
  * A Go engine that uses a Search module to search for its moves.
  * As a parameter to this engine one needs to pass an object of the type
@@ -72,6 +77,18 @@ public class TreeSearchEngine
 	private MoveStack<GoMove> _moveList = new MoveStack<GoMove>();
 	private boolean _isInitialized = false;
 	
+	public static final String PONDER = "ponder";
+	
+	/**
+	 * Whether to keep searching while the opponent is thinking, when the search supports it.
+	 */
+	private boolean _ponder = false;
+	/**
+	 * The color of the last move requested. When a move of this color gets played
+	 * it's the opponent's turn, which is when pondering starts.
+	 */
+	private byte _requestedColor = EMPTY;
+	
 	private Logger _logger;
 	
 	public TreeSearchEngine()
@@ -94,6 +111,7 @@ public class TreeSearchEngine
     	if (!_isInitialized)
     		initialize();
     	
+    	stopPondering();
     	_search.clear();
     	_moveAdministration.clear();
     	_moveList.recycleMoves();
@@ -121,7 +139,7 @@ public class TreeSearchEngine
 					if (event.getKeyCode()==KeyEvent.VK_D)
 					{
 						JFrame window = new JFrame();					
-						MCBoardController controller = new MCBoardController(((MonteCarloHashMapSearch)_search).getAdministration(), ((MonteCarloHashMapSearch)_search).getHashMap());
+						MCBoardController controller = new MCBoardController(((MonteCarloHashMapSearch)_search).getAdministration(), ((MonteCarloHashMapSearch)_search).getTranspositionTable());
 						MCBoardDisplay display = new MCBoardDisplay(controller);
 						Point p = goDataPanel.getLocation();
 						Dimension d = goDataPanel.getSize();
@@ -166,9 +184,15 @@ public class TreeSearchEngine
     		_logger.error("Search Administration: \n"+_search.toString());
     	}
     		
+    	stopPondering();
     	_moveAdministration.playMove(move);
        	_search.playMove(move);
     	_moveList.add((GoMove)move.cloneMove());
+    	if (move.getColor()==_requestedColor)
+    	{
+    		_requestedColor = EMPTY;
+    		startPondering(opposite(move.getColor()));
+    	}
 		_logger.info("Play at "+move);
 		_logger.info("Search Administration ("+_search.getClass().getSimpleName()+"): \n"+_search.toString());
     	DataProviderList.getSingleton().fireDataChange();
@@ -181,6 +205,8 @@ public class TreeSearchEngine
 	public GoMove requestMove(byte color)
     {
     	GoMove move = null;
+    	stopPondering();
+    	_requestedColor = color;
 		try
 		{
 			move = (GoMove)_search.doSearch(color).cloneMove();
@@ -211,12 +237,19 @@ public class TreeSearchEngine
 	public void setTimeConstraints(int mainTime, int byoYomiTime,
                     int nrByoYomiStones)
     {
+    	stopPondering();
+    	TimeManager timeManager = getTimeManager();
+    	if (timeManager!=null)
+    		timeManager.setTimeSettings(mainTime, byoYomiTime, nrByoYomiStones);
+
     	int boardSize = _moveAdministration.getBoardModel().getBoardSize();
     	int nrEstimatedMoves = boardSize * boardSize;
     	nrEstimatedMoves += nrEstimatedMoves/5; // Add 20%
     	if (nrEstimatedMoves==0)
     		nrEstimatedMoves = 1;
-    	int secondsPerMove = mainTime / nrEstimatedMoves + byoYomiTime / nrByoYomiStones;
+    	int secondsPerMove = mainTime / nrEstimatedMoves;
+    	if (nrByoYomiStones>0)
+    		secondsPerMove += byoYomiTime / nrByoYomiStones;
 		_search.getSearchProperties().setIntProperty(SearchProperties.TIME_PER_MOVE, secondsPerMove);
     }
 
@@ -226,8 +259,15 @@ public class TreeSearchEngine
     @Override
 	public void setTimeLeft(byte color, int timeRemaining, int nrStonesRemaining)
     {
-    	int secondsPerMove = timeRemaining / nrStonesRemaining;
-		_search.getSearchProperties().setIntProperty(SearchProperties.TIME_PER_MOVE, secondsPerMove);
+    	stopPondering();
+    	TimeManager timeManager = getTimeManager();
+    	if (timeManager!=null)
+    		timeManager.setTimeLeft(color, timeRemaining, nrStonesRemaining);
+    	else if (nrStonesRemaining>0)
+    	{
+    		int secondsPerMove = timeRemaining / nrStonesRemaining;
+    		_search.getSearchProperties().setIntProperty(SearchProperties.TIME_PER_MOVE, secondsPerMove);
+    	}
     }
 
     /*
@@ -237,7 +277,10 @@ public class TreeSearchEngine
     @Override
 	public void set(String propertyName, String propertyValue)
     {
+    	stopPondering();
     	super.set(propertyName,propertyValue);
+    	if (propertyName.equals(PONDER))
+    		setPonder(Boolean.parseBoolean(propertyValue));
     	_search.getSearchProperties().setProperty(propertyName, propertyValue);
     	_moveAdministration.getGameProperties().setProperty(propertyName, propertyValue);
     }
@@ -248,6 +291,7 @@ public class TreeSearchEngine
     @Override
 	public void takeBack()
     {
+    	stopPondering();
     	_moveAdministration.takeBack();
     	_search.takeBack();
     }
@@ -268,6 +312,7 @@ public class TreeSearchEngine
     @Override
 	public void setup(Iterable <GoMove> moveList)
     {
+    	stopPondering();
     	for (GoMove move : moveList)
     	{
     		_moveAdministration.playMove(move);
@@ -315,6 +360,52 @@ public class TreeSearchEngine
 		GlobalParameters.setCollectingStatistics(flag);
 	}
 	
+	public boolean getPonder()
+	{
+		return _ponder;
+	}
+
+	/**
+	 * Set whether to search on the opponent's time. This only has effect
+	 * when the search used implements PonderingSearch.
+	 * 
+	 * @param ponder
+	 */
+	public void setPonder(boolean ponder)
+	{
+		_ponder = ponder;
+		if (!_ponder)
+			stopPondering();
+	}
+	
+	@SuppressWarnings("unchecked")
+	private void startPondering(byte color)
+	{
+		if (_ponder && _search instanceof PonderingSearch && !_search.isGameFinished())
+		{
+			_logger.info("Start pondering for "+(color==BLACK? "black" : "white"));
+			((PonderingSearch<GoMove>)_search).startPondering(color);
+		}
+	}
+
+	/**
+	 * @return the time-manager of the search, or null when the search doesn't use one.
+	 */
+	@SuppressWarnings("unchecked")
+	private TimeManager getTimeManager()
+	{
+		if (_search instanceof TimedSearch)
+			return ((TimedSearch<GoMove>)_search).getTimeManager();
+		return null;
+	}
+
+	@SuppressWarnings("unchecked")
+	private void stopPondering()
+	{
+		if (_search instanceof PonderingSearch)
+			((PonderingSearch<GoMove>)_search).stopPondering();
+	}
+	
 	public MoveAdministration<GoMove, GoGameProperties> getMoveAdministration()
 	{
 		return _moveAdministration;
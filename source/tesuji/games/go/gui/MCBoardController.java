@@ -1,9 +1,9 @@
 package tesuji.games.go.gui;
 
-import org.cliffc.high_scale_lib.NonBlockingHashMapLong;
 
 import tesuji.games.go.monte_carlo.MonteCarloPluginAdministration;
 import tesuji.games.go.search.MonteCarloHashMapResult;
+import tesuji.games.go.search.TranspositionTable;
 import tesuji.games.go.util.GoArray;
 import tesuji.games.go.util.IntStack;
 import tesuji.games.model.BoardModel;
@@ -12,16 +12,16 @@ public class MCBoardController
 {
 	private MonteCarloPluginAdministration _initialMCAdministration;
 	private MonteCarloPluginAdministration _mcAdministration;
-	private NonBlockingHashMapLong<MonteCarloHashMapResult> _hashMap;
+	private TranspositionTable _hashMap;
 	private IntStack moveStack = new IntStack(1000,null);
 	private MonteCarloHashMapResult _result;
 	
-	public MCBoardController(MonteCarloPluginAdministration mcAdministration, NonBlockingHashMapLong<MonteCarloHashMapResult> hashMap)
+	public MCBoardController(MonteCarloPluginAdministration mcAdministration, TranspositionTable hashMap)
 	{
 		init(mcAdministration,hashMap);
 	}
 	
-	public void init(MonteCarloPluginAdministration mcAdministration, NonBlockingHashMapLong<MonteCarloHashMapResult> hashMap)
+	public void init(MonteCarloPluginAdministration mcAdministration, TranspositionTable hashMap)
 	{
 		_initialMCAdministration = (MonteCarloPluginAdministration)mcAdministration.createClone();
 		_mcAdministration = (MonteCarloPluginAdministration)_initialMCAdministration.createClone();
@@ -29,6 +29,7 @@ package tesuji.games.go.monte_carlo;
 import tesuji.core.util.ArrayStack;
 import tesuji.core.util.InconsistencyException;
 import tesuji.core.util.MersenneTwisterFast;
+import tesuji.core.util.SplitMix64;
 
 import tesuji.games.general.Checksum;
 import tesuji.games.general.MoveIterator;
@@ -39,12 +40,12 @@ import tesuji.games.go.common.Util;
 
 import tesuji.games.go.util.ArrayFactory;
 import tesuji.games.go.util.BoardMarker;
+import tesuji.games.go.util.ChecksumStack;
 import tesuji.games.go.util.DefaultBoardModel;
 import tesuji.games.go.util.DiagonalCursor;
 import tesuji.games.go.util.FourCursor;
 import tesuji.games.go.util.GoArray;
 import tesuji.games.go.util.IntStack;
-import tesuji.games.go.util.LongStack;
 import tesuji.games.go.util.PointSet;
 import tesuji.games.go.util.PointSetFactory;
 import tesuji.games.go.util.SGFUtil;
@@ -65,6 +66,11 @@ public abstract class AbstractMonteCarloAdministration
 	public static final boolean USE_MERCY_RULE = false;
 	
 	protected final MersenneTwisterFast RANDOM = new MersenneTwisterFast();
+
+	/**
+	 * Generates the seeds for the clones, so that each gets its own random stream.
+	 */
+	protected SplitMix64 _randomSeeds = new SplitMix64(System.nanoTime());
 	
 	protected int		_boardSize;
 	protected double	_komi = 7.5;
@@ -191,7 +197,7 @@ public abstract class AbstractMonteCarloAdministration
 	/**
 	 * A list of checksums computed after each move. It's used to check for super-ko.
 	 */
-	protected LongStack _checksumStack;
+	protected ChecksumStack _checksumStack;
 	
 	/**
 	 * The checksum of the current position. Note that this is the checksum of the board-position
@@ -238,7 +244,7 @@ public abstract class AbstractMonteCarloAdministration
 		_checksum = new Checksum();
 
 		_moveStack = ArrayFactory.createLargeIntStack();
-		_checksumStack = ArrayFactory.createLargeLongStack();
+		_checksumStack = new ChecksumStack();
 		_priorityMoveStack = ArrayFactory.createIntStack();
 		_urgencyStack = ArrayFactory.createIntStack();
 		_visitStack = ArrayFactory.createIntStack();
@@ -454,12 +460,7 @@ public abstract class AbstractMonteCarloAdministration
 	 */
 	public boolean hasRepetition(long checksum)
 	{
-		for (int i=_checksumStack.getSize(); --i>=0;)
-		{
-			if (_checksumStack.get(i)==checksum)
-				return true;
-		}
-		return false;
+		return _checksumStack.contains(checksum);
 	}
 	
 	/**
@@ -479,6 +480,16 @@ public abstract class AbstractMonteCarloAdministration
 	 */
 	protected abstract void play(int xy);
 	
+	/*
+	 * (non-Javadoc)
+	 * @see tesuji.games.go.monte_carlo.MonteCarloAdministration#setRandomSeed(long)
+	 */
+	public void setRandomSeed(long seed)
+	{
+		_randomSeeds = new SplitMix64(seed);
+		_randomSeeds.seed(RANDOM);
+	}
+	
 	/*
 	 * (non-Javadoc)
 	 * @see tesuji.games.go.monte_carlo.MonteCarloAdministration#createClone()
@@ -1023,6 +1034,7 @@ public abstract class AbstractMonteCarloAdministration
     {
     	_boardSize = size;
     	initBoardModel(size);
+    	_checksum.init(size);
     	clear();
     }
     
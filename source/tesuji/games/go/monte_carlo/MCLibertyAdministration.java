@@ -205,6 +205,7 @@ public class MCLibertyAdministration
 	public MonteCarloAdministration<GoMove> createClone()
 	{
 		MCLibertyAdministration clone = new MCLibertyAdministration(getBoardSize());
+		clone.setRandomSeed(_randomSeeds.nextLong());
 		clone.copyDataFrom(this);
 		
 		return clone;
@@ -303,6 +303,7 @@ public class MCPatternsAdministration
 	public MonteCarloAdministration<GoMove> createClone()
 	{
 		MCPatternsAdministration clone = new MCPatternsAdministration(getBoardSize(), _patternSet.createClone());
+		clone.setRandomSeed(_randomSeeds.nextLong());
 		clone.initBoardModel(getBoardSize());		
 		clone.copyDataFrom(this);
 		
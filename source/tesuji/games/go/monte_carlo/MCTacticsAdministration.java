@@ -31,6 +31,7 @@ import org.apache.log4j.Logger;
 import tesuji.games.general.GlobalParameters;
 import tesuji.games.go.common.GoMove;
 import tesuji.games.go.monte_carlo.MonteCarloAdministration;
+import tesuji.games.go.tactics.LadderCache;
 import tesuji.games.go.tactics.LadderReader;
 import tesuji.games.go.tactics.TacticsConstant;
 import tesuji.games.go.util.DiagonalCursor;
@@ -118,6 +119,7 @@ public class MCTacticsAdministration
 		
 		initProperties();
 		_ladderReader = new LadderReader(boardSize);
+		_ladderReader.setLadderCache(new LadderCache());
 		_row = createRowArray(getBoardSize());
 		createFogOfWar();
 	}
@@ -204,6 +206,7 @@ public class MCTacticsAdministration
 		_row = createRowArray(size);
 		super.setBoardSize(size);
 		_ladderReader = new LadderReader(size);
+		_ladderReader.setLadderCache(new LadderCache());
 	}
 	
 	@Override
@@ -735,6 +738,7 @@ public class MCTacticsAdministration
 	public MonteCarloAdministration<GoMove> createClone()
 	{
 		MCTacticsAdministration clone = new MCTacticsAdministration(getBoardSize());
+		clone.setRandomSeed(_randomSeeds.nextLong());
 		clone.copyDataFrom(this);
 		
 		return clone;
@@ -57,6 +57,15 @@ public interface MonteCarloAdministration<MoveType extends Move>
 	 * @return a perfect, newly created, copy.
 	 */
 	public MonteCarloAdministration<MoveType> createClone();
+
+	/**
+	 * Seed the random-number generator used for the playouts. The clones made
+	 * afterwards get seeds derived from this one, so that they each play different
+	 * playouts but the same ones every time the administration is seeded the same.
+	 * 
+	 * @param seed
+	 */
+	public void setRandomSeed(long seed);
 		
 	public PointSet getEmptyPoints();
 	
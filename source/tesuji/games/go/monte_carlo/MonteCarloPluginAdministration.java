@@ -32,6 +32,7 @@ import java.util.List;
 import tesuji.core.util.ArrayStack;
 import tesuji.core.util.InconsistencyException;
 import tesuji.core.util.MersenneTwisterFast;
+import tesuji.core.util.SplitMix64;
 
 import tesuji.games.general.Checksum;
 import tesuji.games.general.MoveIterator;
@@ -41,25 +42,25 @@ import tesuji.games.go.common.GoMoveFactory;
 import tesuji.games.go.common.Util;
 
 import tesuji.games.go.monte_carlo.move_generator.MoveGenerator;
-import tesuji.games.go.pattern.util.PatternUtil;
+import tesuji.games.go.pattern.common.Pattern3x3Table;
 import tesuji.games.go.util.ArrayFactory;
 import tesuji.games.go.util.BoardMarker;
+import tesuji.games.go.util.ChecksumStack;
 import tesuji.games.go.util.DefaultBoardModel;
 import tesuji.games.go.util.DiagonalCursor;
 import tesuji.games.go.util.DoubleStack;
 import tesuji.games.go.util.FourCursor;
 import tesuji.games.go.util.GoArray;
 import tesuji.games.go.util.IntStack;
-import tesuji.games.go.util.LongStack;
 import tesuji.games.go.util.PointSet;
 import tesuji.games.go.util.PointSetFactory;
 import tesuji.games.go.util.ProbabilityMap;
 import tesuji.games.go.util.SGFUtil;
+import tesuji.games.go.util.SumTreeProbabilityMap;
 import tesuji.games.gtp.GTPCommand;
 import tesuji.games.model.BoardChangeSupport;
 import tesuji.games.model.BoardModel;
 import tesuji.games.model.BoardModelListener;
-import tesuji.games.util.Point;
 
 import static tesuji.games.general.ColorConstant.*;
 import static tesuji.games.go.util.GoArray.*;
@@ -75,6 +76,11 @@ public class MonteCarloPluginAdministration
 	public static final boolean USE_MERCY_RULE = true;
 	
 	public final MersenneTwisterFast RANDOM = new MersenneTwisterFast();
+
+	/**
+	 * Generates the seeds for the clones, so that each gets its own random stream.
+	 */
+	private SplitMix64 _randomSeeds = new SplitMix64(System.nanoTime());
 	
 	protected int		_boardSize = 9;
 	protected double	_komi = 7.5;
@@ -181,7 +187,6 @@ public class MonteCarloPluginAdministration
 	 * had four opposing neighbours. Otherwise it's set to UNDEFINED_COORDINATE.
 	 */
 	protected int _koPoint;
-	protected Point _koPt = new Point();
 	
 	/**
 	 * A stack with the move-coordinates.
@@ -213,12 +218,12 @@ public class MonteCarloPluginAdministration
 	/**
 	 * A list of checksums computed after each move. It's used to check for super-ko.
 	 */
-	protected LongStack _checksumStack;
+	protected ChecksumStack _checksumStack;
 	
 	/**
 	 * The checksum of the current position. Note that this is the checksum of the board-position
-	 * and doesn't take into account possible ko-capture. Use getPositionalChecksum() to obtain a checksum
-	 * that takes into account ko.
+	 * and doesn't take into account possible ko-capture or the side to move. Use getPositionalChecksum()
+	 * to obtain a checksum that does.
 	 */
 	private Checksum _checksum;
 	
@@ -236,6 +241,16 @@ public class MonteCarloPluginAdministration
 
 	private ProbabilityMap _probabilityMap;
 
+	/**
+	 * Optional table with the weights of 3x3 patterns, shared between clones.
+	 */
+	private Pattern3x3Table _patternTable;
+	/**
+	 * The 16-bit code of the eight neighbours of each point, as defined by Pattern3x3Table.
+	 * It's only kept up to date when there is a pattern-table.
+	 */
+	protected int[] _neighbourhood;
+
 	protected int _lastRandomNumber;
 	
 	private ArrayStack<GoMoveIterator> _iteratorPool =	new ArrayStack<GoMoveIterator>();
@@ -269,17 +284,18 @@ public class MonteCarloPluginAdministration
 		_black = createBytes();
 		_white = createBytes();
 
-		_checksum = new Checksum();
+		_checksum = new Checksum(_boardModel);
 
 		_illegalStack = ArrayFactory.createIntStack();
 		_illegalUrgencyStack = ArrayFactory.createDoubleStack();
 		_moveStack = ArrayFactory.createLargeIntStack();
 		_captiveStack = ArrayFactory.createIntStack();
-		_checksumStack = ArrayFactory.createLargeLongStack();
+		_checksumStack = new ChecksumStack();
 		_priorityMoveStack = ArrayFactory.createIntStack();
 		_urgencyStack = ArrayFactory.createIntStack();
 		
 		_stoneAge = GoArray.createIntegers();
+		_neighbourhood = GoArray.createIntegers();
 		
 		_boardMarker = new BoardMarker();
 		
@@ -364,17 +380,10 @@ public class MonteCarloPluginAdministration
 			}
 		}
 		
-		// Randomize the order of the empty points.
-		PointSet tmpPoints = PointSetFactory.createPointSet();
-		while (_emptyPoints.getSize()>0)
-		{
-			int index = RANDOM.nextInt(_emptyPoints.getSize());
-			int xy = _emptyPoints.get(index);
-			tmpPoints.add(xy);
-			_emptyPoints.remove(xy);
-		}
-		_emptyPoints.recycle();
-		_emptyPoints = tmpPoints;
+		shuffleEmptyPoints();
+		
+		if (_patternTable!=null)
+			initNeighbourhood();
 		
 		_maxGameLength = _emptyPoints.getSize() * 3;
 		_mercyThreshold = _boardSize*3;
@@ -449,6 +458,8 @@ public class MonteCarloPluginAdministration
 		copy(source._white,_white);
 		
 		copy(source._stoneAge, _stoneAge);
+		if (_patternTable!=null)
+			copy(source._neighbourhood, _neighbourhood);
 		
 		_moveStack.copyFrom(source._moveStack);
 		_captiveStack.copyFrom(source._captiveStack);
@@ -577,13 +588,7 @@ public class MonteCarloPluginAdministration
 	 */
 	public boolean hasRepetition(long checksum)
 	{
-		int count = 0;
-		for (int i=_checksumStack.getSize(); --i>=0 && count++<8;)
-		{
-			if (_checksumStack.get(i)==checksum)
-				return true;
-		}
-		return false;
+		return _checksumStack.contains(checksum);
 	}
 	
 	public boolean isLegal(int xy)
@@ -737,6 +742,7 @@ public class MonteCarloPluginAdministration
 		assert _probabilityMap.isConsistent();
 		assert isLibertiesConsistent() : toString();
 		assert isProbabilityMapConsistent() : toString();
+		assert isNeighbourhoodConsistent() : toString();
 	}
 	
 	private void subtractNeighbourValue(int xy, double value)
@@ -763,6 +769,40 @@ public class MonteCarloPluginAdministration
 		while (stone!=xy);		
 	}
 	
+	/*
+	 * (non-Javadoc)
+	 * @see tesuji.games.go.monte_carlo.MonteCarloAdministration#setRandomSeed(long)
+	 */
+	public void setRandomSeed(long seed)
+	{
+		_randomSeeds = new SplitMix64(seed);
+		_randomSeeds.seed(RANDOM);
+		// The order of the empty points was random, from before the seed was set.
+		shuffleEmptyPoints();
+	}
+	
+	/**
+	 * Randomize the order of the empty points. They're taken in the order of their coordinates first,
+	 * so the new order only depends on the random numbers and not on the order they were in.
+	 */
+	private void shuffleEmptyPoints()
+	{
+		PointSet orderedPoints = PointSetFactory.createPointSet();
+		for (int xy=FIRST; xy<=LAST; xy++)
+		{
+			if (_emptyPoints.hasPoint(xy))
+				orderedPoints.add(xy);
+		}
+		_emptyPoints.reset();
+		while (orderedPoints.getSize()>0)
+		{
+			int xy = orderedPoints.get(RANDOM.nextInt(orderedPoints.getSize()));
+			_emptyPoints.add(xy);
+			orderedPoints.remove(xy);
+		}
+		orderedPoints.recycle();
+	}
+	
 	/*
 	 * (non-Javadoc)
 	 * @see tesuji.games.go.monte_carlo.MonteCarloAdministration#createClone()
@@ -771,6 +811,9 @@ public class MonteCarloPluginAdministration
 	public MonteCarloAdministration<GoMove> createClone()
 	{
 		MonteCarloPluginAdministration clone = new MonteCarloPluginAdministration(getBoardSize());
+		clone.setRandomSeed(_randomSeeds.nextLong());
+		clone.setUseSumTree(isUseSumTree());
+		clone.setPatternTable(_patternTable);
 		
 		for (MoveFilter filter : _simulationMoveFilterList)
 		{
@@ -1386,6 +1429,8 @@ public class MonteCarloPluginAdministration
 			_whiteDiagonalNeighbours[right(below)]++;			
 		}
 		_probabilityMap.clear(xy);
+		if (_patternTable!=null)
+			updateNeighbourhood(xy, _colorToPlay&3);
 	}
 
 	/**
@@ -1471,6 +1516,73 @@ public class MonteCarloPluginAdministration
 //			_probabilityMap.reset(xy);
 //		else
 			_probabilityMap.add(xy);
+		if (_patternTable!=null)
+		{
+			updateNeighbourhood(xy, -(_oppositeColor&3));
+			addPatternWeight(xy, _neighbourhood[xy]);
+		}
+	}
+	
+	/**
+	 * Compute the neighbourhood-codes of all the points and add the pattern-weights of the empty points.
+	 */
+	private void initNeighbourhood()
+	{
+		byte[] board = _boardModel.getSingleArray();
+		for (int i=FIRST; i<=LAST; i++)
+		{
+			if (board[i]!=EDGE)
+			{
+				_neighbourhood[i] = Pattern3x3Table.computeCode(board, i);
+				if (board[i]==EMPTY)
+					addPatternWeight(i, _neighbourhood[i]);
+			}
+		}
+	}
+	
+	/**
+	 * Update the neighbourhood-codes of the points around a stone that was added or removed,
+	 * and the pattern-weights of the ones that are empty.
+	 * 
+	 * @param xy - coordinate of the stone
+	 * @param code - the code of the stone, negative when removed
+	 */
+	private void updateNeighbourhood(int xy, int code)
+	{
+		byte[] board = _boardModel.getSingleArray();
+		for (int n=0; n<8; n++)
+		{
+			// xy is the n-th neighbour of next.
+			int next = Pattern3x3Table.getNeighbour(xy, Pattern3x3Table.getOpposite(n));
+			int oldCode = _neighbourhood[next];
+			int newCode = oldCode + (code<<Pattern3x3Table.getShift(n));
+			_neighbourhood[next] = newCode;
+			if (board[next]==EMPTY)
+			{
+				updatePatternWeight(next, oldCode, newCode, BLACK);
+				updatePatternWeight(next, oldCode, newCode, WHITE);
+			}
+		}
+	}
+	
+	private void addPatternWeight(int xy, int code)
+	{
+		double blackWeight = _patternTable.getWeight(code, BLACK);
+		double whiteWeight = _patternTable.getWeight(code, WHITE);
+		if (blackWeight>0.0)
+			_probabilityMap.add(xy, blackWeight, BLACK);
+		if (whiteWeight>0.0)
+			_probabilityMap.add(xy, whiteWeight, WHITE);
+	}
+	
+	private void updatePatternWeight(int xy, int oldCode, int newCode, byte color)
+	{
+		double[] weights = _patternTable.getWeights(color);
+		double difference = weights[newCode] - weights[oldCode];
+		if (difference>0.0)
+			_probabilityMap.add(xy, difference, color);
+		else if (difference<0.0)
+			_probabilityMap.subtract(xy, -difference, color);
 	}
 
 	/*
@@ -1479,10 +1591,7 @@ public class MonteCarloPluginAdministration
 	 */
 	public long getPositionalChecksum()
 	{
-		return _checksum.getValue() + 13*_colorToPlay + (_koPoint==UNDEFINED_COORDINATE? 0:_koPoint*1313);
-//		if (_koPoint==UNDEFINED_COORDINATE)
-//			return _checksum.getValue() + getNrPasses()*13;
-//		return  _checksum.getValue() + _koPoint*17;
+		return _checksum.getValue(_colorToPlay, _koPoint);
 	}
 	/*
 	 * (non-Javadoc)
@@ -1490,12 +1599,7 @@ public class MonteCarloPluginAdministration
 	 */
 	public long getPositionalChecksum(int orientation)
 	{
-		int mid = (_boardSize+1)/2;
-		int x = GoArray.getX(_koPoint) - mid;
-		int y = GoArray.getY(_koPoint) - mid;
-		PatternUtil.adjustOrientation(x, y, orientation, _koPt);
-		int koPoint = GoArray.toXY(_koPt.x+mid, _koPt.y+mid);
-		return _checksum.getValue(orientation) + 13*_colorToPlay + (koPoint==UNDEFINED_COORDINATE? 0:koPoint*1313);
+		return _checksum.getValue(orientation, _colorToPlay, _koPoint);
 	}
 
 	/*
@@ -1755,6 +1859,25 @@ public class MonteCarloPluginAdministration
     	return true;
     }
     
+    /**
+     * This is for verification purposes.
+     * 
+     * @return whether the neighbourhood-codes are the same as when computed from scratch.
+     */
+    private boolean isNeighbourhoodConsistent()
+    {
+    	if (_patternTable==null)
+    		return true;
+    	
+    	byte[] board = _boardModel.getSingleArray();
+    	for (int i=FIRST; i<=LAST; i++)
+    	{
+    		if (board[i]!=EDGE && _neighbourhood[i]!=Pattern3x3Table.computeCode(board, i))
+    			return false;
+    	}
+    	return true;
+    }
+    
 	/**
      * @return the emptyPoints
      */
@@ -1827,6 +1950,7 @@ public class MonteCarloPluginAdministration
     {
     	_boardSize = size;
     	_boardModel.setBoardSize(size);
+    	_checksum.init(size);
 		for (int i=_simulationMoveGeneratorList.size(); --i>=0;)
 		{
 			_simulationMoveGeneratorList.get(i).setBoardSize(size);
@@ -1876,6 +2000,48 @@ public class MonteCarloPluginAdministration
     	return _probabilityMap;
     }
     
+    public Pattern3x3Table getPatternTable()
+    {
+    	return _patternTable;
+    }
+    
+    /**
+     * Set a table with 3x3 patterns, of which the weights get added to the weights of the
+     * empty points in the probability-map. This is a much faster alternative to matching the same
+     * patterns with MatchPatterns, so they shouldn't also be in the group that one uses.
+     * This clears the board.
+     * 
+     * @param patternTable - may be null to not use 3x3 patterns
+     */
+    public void setPatternTable(Pattern3x3Table patternTable)
+    {
+    	_patternTable = patternTable;
+    	clear();
+    }
+    
+    public boolean isUseSumTree()
+    {
+    	return (_probabilityMap instanceof SumTreeProbabilityMap);
+    }
+    
+    /**
+     * Select whether to use a SumTreeProbabilityMap, which picks moves in logarithmic time
+     * and without rounding-errors, instead of the default ProbabilityMap. This clears the board.
+     * 
+     * @param flag
+     */
+    public void setUseSumTree(boolean flag)
+    {
+    	if (flag==isUseSumTree())
+    		return;
+    	
+    	if (flag)
+    		_probabilityMap = new SumTreeProbabilityMap(RANDOM);
+    	else
+    		_probabilityMap = new ProbabilityMap(RANDOM);
+    	clear();
+    }
+    
     /**
      * This is for verification purposes.
      * 
@@ -1,5 +1,6 @@
 package tesuji.games.go.monte_carlo;
 
+import tesuji.games.go.tactics.LadderCache;
 import tesuji.games.go.tactics.LadderReader;
 import tesuji.games.go.tactics.TacticsConstant;
 
@@ -17,6 +18,7 @@ public class SafetyFilter
 	{
 		_administration = administration;
 		_ladderReader = new LadderReader(administration.getBoardSize());
+		_ladderReader.setLadderCache(new LadderCache());
 	}
 
 //	@Override
@@ -3,6 +3,7 @@ package tesuji.games.go.monte_carlo.move_generator;
 import static tesuji.games.general.ColorConstant.BLACK;
 import static tesuji.games.general.ColorConstant.WHITE;
 import tesuji.games.go.monte_carlo.MonteCarloPluginAdministration;
+import tesuji.games.go.tactics.LadderCache;
 import tesuji.games.go.tactics.LadderReader;
 import tesuji.games.go.tactics.TacticsConstant;
 
@@ -16,6 +17,7 @@ public abstract class LadderMoveGenerator extends AbstractMoveGenerator
 	{
 		administration = admin;
 		_ladderReader = new LadderReader(administration.getBoardSize()); // A little space (and time) can be saved by sharing this instance.
+		_ladderReader.setLadderCache(new LadderCache());
 	}
 
 	@Override
@@ -1,6 +1,9 @@
 package tesuji.games.go.monte_carlo.move_generator;
 
 import static tesuji.games.go.common.GoConstant.UNDEFINED_COORDINATE;
+
+import java.util.HashSet;
+
 import tesuji.core.util.ArrayList;
 import tesuji.games.general.ColorConstant;
 import tesuji.games.go.monte_carlo.MonteCarloPluginAdministration;
@@ -15,6 +18,7 @@ public class MatchPatterns extends LadderMoveGenerator
 	protected IncrementalPatternMatcher patternMatcher;
 	private PatternManager _patternManager;
 	private IncrementalPatternMatcher _patternMatcher;
+	private HashSet<PatternMatch> _cancelSet = new HashSet<PatternMatch>();
 	
 	public MatchPatterns(PatternManager patternManager)
 	{
@@ -80,15 +84,7 @@ public class MatchPatterns extends LadderMoveGenerator
 		_patternMatcher.updatePatternMatches();
 		ArrayList<PatternMatch> deletedMatchList = _patternMatcher.getDeletedMatchList();
 		ArrayList<PatternMatch> newMatchList = _patternMatcher.getNewMatchList();
-		for (int i=newMatchList.size(); --i>=0;)
-		{
-			PatternMatch match = newMatchList.get(i);
-			if (deletedMatchList.contains(match))
-			{
-				newMatchList.remove(i);
-				deletedMatchList.remove(match);
-			}
-		}
+		cancelMatches(newMatchList, deletedMatchList);
 		double factor = 1.0;
 		for (int i=newMatchList.size(); --i>=0;)
 		{
@@ -117,6 +113,39 @@ public class MatchPatterns extends LadderMoveGenerator
 		}
 	}
 
+	/**
+	 * Remove the matches that were lost and found again in the same update from both lists,
+	 * as they don't change the probabilities. A match is equal to the one it replaces, and neither
+	 * list contains the same match twice, so a hash-set of the deleted matches finds the pairs.
+	 */
+	private void cancelMatches(ArrayList<PatternMatch> newMatchList, ArrayList<PatternMatch> deletedMatchList)
+	{
+		if (newMatchList.isEmpty() || deletedMatchList.isEmpty())
+			return;
+
+		_cancelSet.clear();
+		for (int i=deletedMatchList.size(); --i>=0;)
+			_cancelSet.add(deletedMatchList.get(i));
+		int nrCancelled = 0;
+		for (int i=newMatchList.size(); --i>=0;)
+		{
+			if (_cancelSet.remove(newMatchList.get(i)))
+			{
+				newMatchList.remove(i);
+				nrCancelled++;
+			}
+		}
+		if (nrCancelled==0)
+			return;
+
+		// What's left in the set are the deleted matches that weren't found again.
+		for (int i=deletedMatchList.size(); --i>=0;)
+		{
+			if (!_cancelSet.contains(deletedMatchList.get(i)))
+				deletedMatchList.remove(i);
+		}
+	}
+
 	public String toString()
 	{
 		return administration.toString();
@@ -0,0 +1,341 @@
+package tesuji.games.go.pattern.common;
+
+import org.apache.log4j.Logger;
+
+import tesuji.core.util.List;
+import tesuji.games.go.util.GoArray;
+
+import static tesuji.games.general.ColorConstant.*;
+import static tesuji.games.go.common.GoConstant.*;
+
+/**
+ * Table with the weights of all possible 3x3 neighbourhoods of an empty point, for the patterns
+ * that don't look further than the eight points around the point where the move is played.<br>
+ * <br>
+ * A neighbourhood is coded in 16 bits, two for each of the eight neighbours in the order
+ * left-above, above, right-above, left, right, left-below, below and right-below. The two bits are
+ * 0 for an empty point, 1 for black, 2 for the edge and 3 for white, so that the code of a stone
+ * is simply its color&3. This makes it cheap to keep the code of each point up to date when
+ * stones get added and removed, after which finding the weight of a point takes a single array-read.<br>
+ * <br>
+ * When a pattern is added, the weights of all the codes it matches are computed beforehand for all
+ * eight rotations and reflections and for both colors swapped, much like the incremental pattern-matcher
+ * stores all sixteen orientations in its tree. Patterns that have conditions, or that look further
+ * than the neighbours of the move, can't be put in the table.<br>
+ * <br>
+ * After construction the table is only read, so it can be shared by any number of administrations.
+ */
+public class Pattern3x3Table
+{
+	private static Logger _logger = Logger.getLogger(Pattern3x3Table.class);
+
+	public static final int NR_CODES = 1<<16;
+
+	public static final int EMPTY_CODE = 0;
+	public static final int BLACK_CODE = BLACK&3;
+	public static final int EDGE_CODE = 2;
+	public static final int WHITE_CODE = WHITE&3;
+
+	private static final int NR_NEIGHBOURS = 8;
+	private static final int NR_ORIENTATIONS = 8;
+
+	private static final int[] DX = new int[] { -1, 0, 1, -1, 1, -1, 0, 1 };
+	private static final int[] DY = new int[] { -1, -1, -1, 0, 0, 1, 1, 1 };
+	private static final int[] OFFSET = new int[NR_NEIGHBOURS];
+	static
+	{
+		for (int n=0; n<NR_NEIGHBOURS; n++)
+			OFFSET[n] = DX[n]+DY[n]*GoArray.WIDTH;
+	}
+
+	private final double[][] _weights = new double[2][NR_CODES];
+
+	/**
+	 * The last pattern that matched a code, so that a pattern that's symmetrical
+	 * doesn't get its weight added more than once for the same code.
+	 */
+	private final int[][] _stamps = new int[2][NR_CODES];
+	private int _stamp;
+
+	private int _nrPatterns;
+
+	public Pattern3x3Table()
+	{
+	}
+
+	public Pattern3x3Table(List<Pattern> patternList)
+	{
+		addPatterns(patternList);
+	}
+
+	/**
+	 * Create a table with the 3x3 patterns of the default group of the pattern-manager.
+	 *
+	 * @param patternManager
+	 */
+	public Pattern3x3Table(PatternManager patternManager)
+	{
+		this(patternManager.getDefaultPatternGroup().getPatternList());
+	}
+
+	/**
+	 * @param xy
+	 * @param n - the neighbour number, from 0 to 7
+	 *
+	 * @return the coordinate of the n-th neighbour of xy.
+	 */
+	public static int getNeighbour(int xy, int n)
+	{
+		return xy + OFFSET[n];
+	}
+
+	/**
+	 * @param n - the neighbour number, from 0 to 7
+	 *
+	 * @return the number of bits to shift the code of the n-th neighbour.
+	 */
+	public static int getShift(int n)
+	{
+		return n<<1;
+	}
+
+	/**
+	 * @param n - the neighbour number, from 0 to 7
+	 *
+	 * @return the number of the neighbour in the opposite direction. So xy is the
+	 * n-th neighbour of the point that is the getOpposite(n)-th neighbour of xy.
+	 */
+	public static int getOpposite(int n)
+	{
+		return NR_NEIGHBOURS-1-n;
+	}
+
+	/**
+	 * @param value - EMPTY, BLACK, WHITE or EDGE
+	 *
+	 * @return the 2-bit code of a board-value.
+	 */
+	public static int getCode(byte value)
+	{
+		if (value==EDGE)
+			return EDGE_CODE;
+		return value&3;
+	}
+
+	/**
+	 * Compute the code of the neighbourhood of a point from scratch.
+	 *
+	 * @param board
+	 * @param xy
+	 *
+	 * @return the 16-bit code of the eight neighbours of xy.
+	 */
+	public static int computeCode(byte[] board, int xy)
+	{
+		int code = 0;
+		for (int n=0; n<NR_NEIGHBOURS; n++)
+			code |= getCode(board[getNeighbour(xy, n)]) << getShift(n);
+		return code;
+	}
+
+	/**
+	 * @param code - the code of the neighbourhood of an empty point
+	 * @param color - the color to play on that point
+	 *
+	 * @return the total weight of the patterns matching the neighbourhood.
+	 */
+	public double getWeight(int code, byte color)
+	{
+		return (color==BLACK)? _weights[0][code] : _weights[1][code];
+	}
+
+	/**
+	 * @param color
+	 *
+	 * @return the weights for the color indexed by neighbourhood code, for reading only.
+	 */
+	public double[] getWeights(byte color)
+	{
+		return (color==BLACK)? _weights[0] : _weights[1];
+	}
+
+	/**
+	 * @return the number of patterns that were put in the table.
+	 */
+	public int getNrPatterns()
+	{
+		return _nrPatterns;
+	}
+
+	public void addPatterns(List<Pattern> patternList)
+	{
+		int nrPatterns = _nrPatterns;
+		for (int i=0; i<patternList.size(); i++)
+			addPattern(patternList.get(i));
+		_logger.info("Added "+(_nrPatterns-nrPatterns)+" of "+patternList.size()+" patterns to the 3x3 table");
+	}
+
+	/**
+	 * Add the weights of a pattern to the table, if it fits.
+	 *
+	 * @param pattern
+	 *
+	 * @return whether the pattern was added, for at least one of the two colors.
+	 */
+	public boolean addPattern(Pattern pattern)
+	{
+		if (!pattern.getConditionList().isEmpty())
+			return false;
+
+		boolean added = false;
+		int moveX = pattern.getBlackX();
+		int moveY = pattern.getBlackY();
+		if (moveX==UNDEFINED_COORDINATE && pattern.getWhiteX()==UNDEFINED_COORDINATE)
+		{
+			// Patterns without a move, like the generated ones, suggest a move for both colors on the user-point.
+			moveX = pattern.getUserX();
+			moveY = pattern.getUserY();
+			if (moveX==UNDEFINED_COORDINATE)
+				return false;
+			added |= addPattern(pattern, moveX, moveY, pattern.getUrgencyValueBlack(), 0);
+			added |= addPattern(pattern, moveX, moveY, pattern.getUrgencyValueWhite(), 1);
+		}
+		else
+		{
+			if (moveX!=UNDEFINED_COORDINATE)
+				added |= addPattern(pattern, moveX, moveY, pattern.getUrgencyValueBlack(), 0);
+			if (pattern.getWhiteX()!=UNDEFINED_COORDINATE)
+				added |= addPattern(pattern, pattern.getWhiteX(), pattern.getWhiteY(), pattern.getUrgencyValueWhite(), 1);
+		}
+		if (added)
+			_nrPatterns++;
+		return added;
+	}
+
+	/**
+	 * Add the weight of the move of one color in a pattern.
+	 *
+	 * @param pattern
+	 * @param moveX
+	 * @param moveY
+	 * @param weight
+	 * @param colorIndex - 0 for black, 1 for white
+	 *
+	 * @return whether the pattern fits in the table
+	 */
+	private boolean addPattern(Pattern pattern, int moveX, int moveY, double weight, int colorIndex)
+	{
+		byte moveValue = pattern.getPoint(moveX, moveY);
+		if ((moveValue!=EMPTY && moveValue!=NOCARE) || weight<=0.0)
+			return false;
+
+		byte[] values = new byte[NR_NEIGHBOURS];
+		if (!getNeighbourhood(pattern, moveX, moveY, values))
+			return false;
+
+		_stamp++;
+		for (int orientation=0; orientation<NR_ORIENTATIONS; orientation++)
+		{
+			int mask = 0;
+			int code = 0;
+			int invertedCode = 0;
+			for (int n=0; n<NR_NEIGHBOURS; n++)
+			{
+				byte value = values[n];
+				if (value==NOCARE)
+					continue;
+				int shift = getShift(getOrientedNeighbour(n, orientation));
+				mask |= 3 << shift;
+				code |= getCode(value) << shift;
+				// The same pattern with the colors reversed is a match for the other color.
+				invertedCode |= getCode((value==EDGE)? EDGE : opposite(value)) << shift;
+			}
+			addCodes(mask, code, weight, colorIndex);
+			addCodes(mask, invertedCode, weight, colorIndex^1);
+		}
+		return true;
+	}
+
+	/**
+	 * Get the values of the eight neighbours of the move in a pattern.
+	 *
+	 * @return false when the pattern defines points further away from the move than its neighbours.
+	 */
+	private static boolean getNeighbourhood(Pattern pattern, int moveX, int moveY, byte[] values)
+	{
+		for (int y=0; y<pattern.getHeight(); y++)
+		{
+			for (int x=0; x<pattern.getWidth(); x++)
+			{
+				if ((Math.abs(x-moveX)>1 || Math.abs(y-moveY)>1) && pattern.getPoint(x, y)!=NOCARE)
+					return false;
+			}
+		}
+		int width = pattern.getWidth();
+		int height = pattern.getHeight();
+		if ((pattern.hasTopEdge() && moveY>0) || (pattern.hasLeftEdge() && moveX>0)
+			|| (pattern.hasBottomEdge() && moveY<height-1) || (pattern.hasRightEdge() && moveX<width-1))
+			return false;
+
+		for (int n=0; n<NR_NEIGHBOURS; n++)
+		{
+			int x = moveX+DX[n];
+			int y = moveY+DY[n];
+			if ((y==-1 && pattern.hasTopEdge()) || (x==-1 && pattern.hasLeftEdge())
+				|| (y==height && pattern.hasBottomEdge()) || (x==width && pattern.hasRightEdge()))
+				values[n] = EDGE;
+			else if (x<0 || y<0 || x>=width || y>=height)
+				values[n] = NOCARE;
+			else
+				values[n] = pattern.getPoint(x, y);
+		}
+		return true;
+	}
+
+	/**
+	 * @return the neighbour number the n-th neighbour turns into after rotating
+	 * and reflecting the neighbourhood in one of eight ways.
+	 */
+	private static int getOrientedNeighbour(int n, int orientation)
+	{
+		int dx = DX[n];
+		int dy = DY[n];
+		if ((orientation&1)!=0)
+			dx = -dx;
+		if ((orientation&2)!=0)
+			dy = -dy;
+		if ((orientation&4)!=0)
+		{
+			int tmp = dx;
+			dx = dy;
+			dy = tmp;
+		}
+		for (int i=0; i<NR_NEIGHBOURS; i++)
+		{
+			if (DX[i]==dx && DY[i]==dy)
+				return i;
+		}
+		throw new IllegalStateException();
+	}
+
+	/**
+	 * Add the weight to all the codes that have the given value in the bits of the mask.
+	 */
+	private void addCodes(int mask, int value, double weight, int colorIndex)
+	{
+		int free = ~mask & (NR_CODES-1);
+		int subset = free;
+		while (true)
+		{
+			int code = value | subset;
+			if (_stamps[colorIndex][code]!=_stamp)
+			{
+				_stamps[colorIndex][code] = _stamp;
+				_weights[colorIndex][code] += weight;
+			}
+			if (subset==0)
+				break;
+			subset = (subset-1) & free;
+		}
+	}
+}
@@ -0,0 +1,164 @@
+package tesuji.games.go.pattern.incremental;
+
+import java.util.IdentityHashMap;
+
+import tesuji.core.util.ArrayList;
+import tesuji.core.util.List;
+
+import static tesuji.games.general.ColorConstant.*;
+
+/**
+ * A FullPatternTree compiled into a single int-array, for matching without chasing
+ * pointers through the heap.<br>
+ * <br>
+ * Each node takes NODE_SIZE consecutive ints and is identified by the index of its first int,
+ * which is what gets stored in the MatchingState of a point. A node holds the offset of the point
+ * it examines, the index of its child for each of the four board-values and for no-care,
+ * the index of its first leaf and whether it's a leaf-node. The leafs of a node are the ones from its
+ * first leaf up to the first leaf of the next node, so a sentinel node follows the last one.
+ * The nodes are laid out depth-first, so a node is usually close to the one examined before it.<br>
+ * <br>
+ * The compiled tree doesn't change, so it has to be compiled again after the FullPatternTree changed.
+ */
+class FlatPatternTree
+{
+	public static final int NO_NODE = -1;
+	public static final int ROOT = 0;
+
+	private static final int OFFSET = 0;
+	private static final int EMPTY_CHILD = 1;
+	private static final int BLACK_CHILD = 2;
+	private static final int WHITE_CHILD = 3;
+	private static final int EDGE_CHILD = 4;
+	private static final int NOCARE_CHILD = 5;
+	private static final int FIRST_LEAF = 6;
+	private static final int IS_LEAF = 7;
+	public static final int NODE_SIZE = 8;
+
+	/**
+	 * The slot of the child to follow, indexed by the board-value as an unsigned byte.
+	 */
+	private static final int[] CHILD_SLOT = new int[256];
+	static
+	{
+		CHILD_SLOT[EMPTY&0xff] = EMPTY_CHILD;
+		CHILD_SLOT[BLACK&0xff] = BLACK_CHILD;
+		CHILD_SLOT[WHITE&0xff] = WHITE_CHILD;
+		CHILD_SLOT[EDGE&0xff] = EDGE_CHILD;
+	}
+
+	private final int[] _nodes;
+	private final IncrementalPatternTreeLeaf[] _leafs;
+
+	FlatPatternTree(FullPatternTree tree)
+	{
+		ArrayList<IncrementalPatternTreeNode> nodeList = new ArrayList<IncrementalPatternTreeNode>();
+		IdentityHashMap<IncrementalPatternTreeNode, Integer> indexMap = new IdentityHashMap<IncrementalPatternTreeNode, Integer>();
+		int nrLeafs = collectNodes(tree.getRoot(), nodeList, indexMap);
+
+		_nodes = new int[(nodeList.size()+1)*NODE_SIZE];
+		_leafs = new IncrementalPatternTreeLeaf[nrLeafs];
+		int leafIndex = 0;
+		for (int i=0; i<nodeList.size(); i++)
+		{
+			IncrementalPatternTreeNode node = nodeList.get(i);
+			int index = i*NODE_SIZE;
+			_nodes[index+OFFSET] = node.getOffset();
+			_nodes[index+EMPTY_CHILD] = getIndex(node.getEmptyChild(), indexMap);
+			_nodes[index+BLACK_CHILD] = getIndex(node.getBlackChild(), indexMap);
+			_nodes[index+WHITE_CHILD] = getIndex(node.getWhiteChild(), indexMap);
+			_nodes[index+EDGE_CHILD] = getIndex(node.getEdgeChild(), indexMap);
+			_nodes[index+NOCARE_CHILD] = getIndex(node.getNoCareChild(), indexMap);
+			_nodes[index+FIRST_LEAF] = leafIndex;
+			_nodes[index+IS_LEAF] = node.isLeaf()? 1 : 0;
+			List<IncrementalPatternTreeLeaf> leafList = node.getLeafList();
+			if (leafList!=null)
+			{
+				for (int l=0; l<leafList.size(); l++)
+					_leafs[leafIndex++] = leafList.get(l);
+			}
+		}
+		_nodes[nodeList.size()*NODE_SIZE+FIRST_LEAF] = leafIndex;
+	}
+
+	private static int collectNodes(IncrementalPatternTreeNode node, ArrayList<IncrementalPatternTreeNode> nodeList,
+					IdentityHashMap<IncrementalPatternTreeNode, Integer> indexMap)
+	{
+		if (node==null)
+			return 0;
+
+		indexMap.put(node, nodeList.size()*NODE_SIZE);
+		nodeList.add(node);
+		int nrLeafs = (node.getLeafList()==null)? 0 : node.getLeafList().size();
+		nrLeafs += collectNodes(node.getEmptyChild(), nodeList, indexMap);
+		nrLeafs += collectNodes(node.getBlackChild(), nodeList, indexMap);
+		nrLeafs += collectNodes(node.getWhiteChild(), nodeList, indexMap);
+		nrLeafs += collectNodes(node.getEdgeChild(), nodeList, indexMap);
+		nrLeafs += collectNodes(node.getNoCareChild(), nodeList, indexMap);
+		return nrLeafs;
+	}
+
+	private static int getIndex(IncrementalPatternTreeNode node, IdentityHashMap<IncrementalPatternTreeNode, Integer> indexMap)
+	{
+		if (node==null)
+			return NO_NODE;
+		return indexMap.get(node);
+	}
+
+	/**
+	 * @return the offset of the point examined by the node, relative to the point where the matching started.
+	 */
+	public final int getOffset(int node)
+	{
+		return _nodes[node+OFFSET];
+	}
+
+	/**
+	 * @param node
+	 * @param value - the value on the board of the point examined by the node, which is EMPTY, BLACK, WHITE or EDGE.
+	 *
+	 * @return the child to follow, or NO_NODE
+	 */
+	public final int getChild(int node, byte value)
+	{
+		return _nodes[node+CHILD_SLOT[value&0xff]];
+	}
+
+	public final int getNoCareChild(int node)
+	{
+		return _nodes[node+NOCARE_CHILD];
+	}
+
+	public final boolean isLeaf(int node)
+	{
+		return _nodes[node+IS_LEAF]!=0;
+	}
+
+	public final int getFirstLeaf(int node)
+	{
+		return _nodes[node+FIRST_LEAF];
+	}
+
+	/**
+	 * @return the index after the last leaf of the node.
+	 */
+	public final int getEndLeaf(int node)
+	{
+		return _nodes[node+NODE_SIZE+FIRST_LEAF];
+	}
+
+	public final IncrementalPatternTreeLeaf getLeaf(int index)
+	{
+		return _leafs[index];
+	}
+
+	public int getNrNodes()
+	{
+		return _nodes.length/NODE_SIZE - 1;
+	}
+
+	public int getNrLeafs()
+	{
+		return _leafs.length;
+	}
+}
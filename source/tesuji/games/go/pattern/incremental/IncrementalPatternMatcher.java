@@ -32,10 +32,12 @@ import tesuji.core.util.List;
 import tesuji.games.go.pattern.common.Pattern;
 import tesuji.games.go.pattern.common.PatternGroup;
 import tesuji.games.go.pattern.common.PatternManager;
+import tesuji.games.go.util.ArrayFactory;
+import tesuji.games.go.util.BoardMarker;
 import tesuji.games.go.util.DefaultBoardModel;
 import tesuji.games.go.util.GoArray;
+import tesuji.games.go.util.IntStack;
 import tesuji.games.model.BoardChange;
-import tesuji.games.model.BoardChangeFactory;
 import tesuji.games.model.BoardModel;
 import tesuji.games.model.BoardModelListener;
 
@@ -49,6 +51,9 @@ import static tesuji.games.go.util.GoArray.MAX;
  * its nature has changed considerably over time. A pattern-matcher more closely
  * resembling the original implementation is in the package tesuji.games.go.pattern.traditional.
  * 
+ * Like the Monte-Carlo administrations, it records which points changed since the data was last
+ * copied from another pattern-matcher. When copying from the same one again, only the MatchingStates
+ * of those points get restored, so a playout only pays for the points it touched.
  */
 public class IncrementalPatternMatcher
 	implements BoardModelListener
@@ -58,10 +63,23 @@ public class IncrementalPatternMatcher
 	private PointSpiral spiral;
 	private PatternGroup group;
 	private FullPatternTree tree;
+	/**
+	 * The tree compiled into an array, which is what the matching actually uses.
+	 * It's compiled again whenever the tree changes.
+	 */
+	private FlatPatternTree flatTree;
+	/**
+	 * The no-care branches still to be matched, so the matching doesn't need to recurse.
+	 */
+	private int[] _nodeStack = new int[64];
 	private PatternManager patternManager;
 	private DefaultBoardModel _boardModel; // = new DefaultBoardModel();
 	private PatternMatchList _matchList = new PatternMatchList();
-	private ArrayList<BoardChange> _boardChangeList = new ArrayList<BoardChange>(32);
+	/**
+	 * The board-changes since the last update, each packed in an int as (xy<<8 | new value).
+	 */
+	private int[] _boardChanges = new int[32];
+	private int _nrBoardChanges;
 	private int _moveNr;
 	
 	private MatchingState[] matchingState;
@@ -70,6 +88,21 @@ public class IncrementalPatternMatcher
 	//private PatternMatchList _deletedMatchList = new PatternMatchList();
 	private ArrayList<Pattern> _newPatternList = new ArrayList<Pattern>();
 	
+	/**
+	 * The points of which the MatchingState changed since the data was last copied from _journalSource.
+	 * Each point is recorded only once, which is what _dirtyMarker is used for.
+	 */
+	private IntStack _dirtyPoints = ArrayFactory.createIntStack();
+	private BoardMarker _dirtyMarker = new BoardMarker();
+	/**
+	 * The pattern-matcher the data was last copied from and the modification-count it had at
+	 * that time. As long as that count didn't change, restoring the MatchingStates of the points
+	 * in _dirtyPoints brings this pattern-matcher back to the same state as the source.
+	 */
+	private IncrementalPatternMatcher _journalSource;
+	private int _journalSourceModificationCount;
+	private int _modificationCount;
+	
 	public static int nrMatches = 0;
 		
 	/**
@@ -94,6 +127,7 @@ public class IncrementalPatternMatcher
 	
 	public void setBoardSize(int size)
 	{
+		_modificationCount++;
 		_boardModel = new DefaultBoardModel(size);
 		for (int i=0; i<GoArray.MAX; i++)
 		{
@@ -101,7 +135,7 @@ public class IncrementalPatternMatcher
 			{
 				_boardModel.set(i,_boardModel.get(i));
 				matchingState[i] = new MatchingState();
-				matchingState[i].add(tree.getRoot()); // XXX - superfluous?
+				matchingState[i].addNode(FlatPatternTree.ROOT); // XXX - superfluous?
 			}
 		}
 	}
@@ -127,6 +161,7 @@ public class IncrementalPatternMatcher
 		}
 		
 		_moveNr = 1;
+		_modificationCount++;
 		_matchList.clear();
 		_newMatchList.clear();
 		_deletedMatchList.clear();
@@ -136,7 +171,7 @@ public class IncrementalPatternMatcher
 			if (_boardModel.get(i)!=EDGE)
 			{
 				matchingState[i].clear();
-				matchingState[i].add(tree.getRoot()); // XXX - superfluous?
+				matchingState[i].addNode(FlatPatternTree.ROOT); // XXX - superfluous?
 			}
 		}
 		for (int i=0; i<GoArray.MAX; i++)
@@ -146,7 +181,7 @@ public class IncrementalPatternMatcher
 				// Note that below it does not call matchBoardToTreeAndStoreState(_context).
 				// That may appear to be the same but it's not because a point may have gotten extra nodes added
 				// apart from the root due to matching an earlier point. That can cause superfluous matches.
-				recursiveMatchAndStoreState(tree.getRoot(), i);
+				matchAndStoreState(FlatPatternTree.ROOT, i);
 			}
 		}
     	assert(checkConsistency());
@@ -169,6 +204,8 @@ public class IncrementalPatternMatcher
 		ArrayList<Pattern> list = new ArrayList<Pattern>(1);
 		list.add(pattern);
 		tree.addPatterns(list);
+		flatTree = new FlatPatternTree(tree);
+		_modificationCount++;
 	}
 	
 	public void deletePattern(int patternNr)
@@ -176,18 +213,21 @@ public class IncrementalPatternMatcher
 		group.getPatternList().get(patternNr).setRemoved(true);
 		group.getPatternList().remove(patternNr);
 		tree.getRoot().removeDeadPatterns();
+		flatTree = new FlatPatternTree(tree);
+		_modificationCount++;
 	}
 	
 	/**
 	 * This is where the major work is done. Based on changes of the board,
-	 * recorded in a list of BoardChange objects, the pattern-matching states
+	 * recorded in a list of packed board-changes, the pattern-matching states
 	 * are updated.
 	 * 
 	 * Upon completion of this method, _matchList will contain the list of patterns
 	 * that are found on the board. _newMatchList will contain patterns that were
 	 * newly found since the previous call to this method while _deletedMatchList
 	 * contains the matches that are no longer present on the board because of the
-	 * recent board-changes.
+	 * recent board-changes. A match that was found and lost again during the update
+	 * is in neither, but a match that was lost and then found again is in both.
 	 */
 	public void updatePatternMatches()
 	{
@@ -199,34 +239,36 @@ public class IncrementalPatternMatcher
 		
     	assert(checkConsistency());
 
-    	for (int i=0; i<_boardChangeList.size(); i++)
+    	if (_nrBoardChanges!=0)
+    		_modificationCount++;
+    	FlatPatternTree flatTree = this.flatTree;
+    	for (int i=0; i<_nrBoardChanges; i++)
     	{
-    		BoardChange boardChange = _boardChangeList.get(i);
-    		int xy = boardChange.getXY();
+    		int boardChange = _boardChanges[i];
+    		int xy = boardChange>>8;
     		MatchingState state = matchingState[xy];
-    		ArrayList<IncrementalPatternTreeNode> nodeList = state.getNodeList();
+    		markDirty(xy);
     		
-    		for (int n=0; n<nodeList.size(); n++)
+    		for (int n=0; n<state.getNrNodes(); n++)
     		{
-    			IncrementalPatternTreeNode node = nodeList.get(n);
-    			recursiveMatchAndRemoveState(node,xy-node.getOffset());
+    			int node = state.getNode(n);
+    			matchAndRemoveState(node,xy-flatTree.getOffset(node));
 //    	    	assert(checkConsistency2());
     		}
 
-    		_boardModel.set(boardChange.getXY(), boardChange.getNewValue());
+    		_boardModel.set(xy, (byte)boardChange);
 
-    		for (int n=0; n<nodeList.size(); n++)
+    		for (int n=0; n<state.getNrNodes(); n++)
     		{
-    			IncrementalPatternTreeNode node = nodeList.get(n);
+    			int node = state.getNode(n);
  //   	    	assert(checkConsistency2());
-    			recursiveMatchAndStoreState(node,xy-node.getOffset());
+    			matchAndStoreState(node,xy-flatTree.getOffset(node));
 //    	    	assert(checkConsistency2());
     		}
-    		boardChange.recycle();
         	assert(checkConsistency());
     	}
 
-    	_boardChangeList.clear();
+    	_nrBoardChanges = 0;
 //    	System.out.println("Match Board:");
 //    	System.out.println(_boardModel.toString());
 //    	System.out.println("to patterns:\n"+_newMatchList);
@@ -245,7 +287,7 @@ public class IncrementalPatternMatcher
 		{
 			if (_boardModel.get(i)!=EDGE)
 			{
-    			recursiveCheckState(tree.getRoot(),i);
+    			checkState(FlatPatternTree.ROOT,i);
     			matchingState[i].checkConsistency(this);
  
 //    			MatchingState state = matchingState[i];
@@ -274,122 +316,143 @@ public class IncrementalPatternMatcher
 		return true;
 	}
 	
-	private void recursiveCheckState(IncrementalPatternTreeNode startNode, int startXY)
+	private void checkState(int startNode, int startXY)
 	{
-		IncrementalPatternTreeNode node = startNode;
-		// Some of the recursion has been unwound.  This loop deals with the
-		// main line.  NoCare branches handled by a recursive call on this routine.
-		while (node!=null)
+		FlatPatternTree flatTree = this.flatTree;
+		int stackSize = 0;
+		int node = startNode;
+		while (true)
 		{
-			List<IncrementalPatternTreeLeaf> leafList = node.getLeafList();
-			if (leafList!=null)
-				for (int i=leafList.size(); --i>=0;)
-					checkMatch(leafList.get(i),startXY);
-
-			IncrementalPatternTreeNode noCareChild = node.getNoCareChild();
-			if (noCareChild!=null)
+			// This loop deals with the main line. NoCare branches are put on the stack to be checked after it.
+			while (node!=FlatPatternTree.NO_NODE)
 			{
-				int nextXY = noCareChild.getOffset()+startXY;
-				if (nextXY>0 && nextXY<GoArray.MAX && matchingState[nextXY]!=null)
-					assert(matchingState[nextXY].findNode(noCareChild)!=null);
-				recursiveCheckState(noCareChild,startXY);
-			}
+				for (int i=flatTree.getEndLeaf(node); --i>=flatTree.getFirstLeaf(node);)
+					checkMatch(flatTree.getLeaf(i),startXY);
 
-			// Figure out what's on the board point to be examined next. 
-			node = getNextNodeAndCheck(node,startXY);
+				int noCareChild = flatTree.getNoCareChild(node);
+				if (noCareChild!=FlatPatternTree.NO_NODE)
+				{
+					int nextXY = flatTree.getOffset(noCareChild)+startXY;
+					if (nextXY>0 && nextXY<GoArray.MAX && matchingState[nextXY]!=null)
+						assert(matchingState[nextXY].hasNode(noCareChild));
+					stackSize = push(noCareChild, stackSize);
+				}
+
+				// Figure out what's on the board point to be examined next. 
+				node = getNextNodeAndCheck(node,startXY);
+			}
+			if (stackSize==0)
+				return;
+			node = _nodeStack[--stackSize];
 		}
 	}
 
-	private void recursiveMatchAndStoreState(IncrementalPatternTreeNode startNode, int startXY)
+	private void matchAndStoreState(int startNode, int startXY)
 	{
-		IncrementalPatternTreeNode node = startNode;
-		// Some of the recursion has been unwound.  This loop deals with the
-		// main line.  NoCare branches handled by a recursive call on this routine.
-		while (node!=null)
+		FlatPatternTree flatTree = this.flatTree;
+		int stackSize = 0;
+		int node = startNode;
+		while (true)
 		{
-			List<IncrementalPatternTreeLeaf> leafList = node.getLeafList();
-			if (leafList!=null)
-				for (int i=leafList.size(); --i>=0;)
-					storeMatch(leafList.get(i),startXY);
-
-			IncrementalPatternTreeNode noCareChild = node.getNoCareChild();
-			if (noCareChild!=null)
+			// This loop deals with the main line. NoCare branches are put on the stack to be matched after it.
+			while (node!=FlatPatternTree.NO_NODE)
 			{
-				int nextXY = noCareChild.getOffset()+startXY;
-				if (nextXY>0 && nextXY<GoArray.MAX && matchingState[nextXY]!=null)
+				for (int i=flatTree.getEndLeaf(node); --i>=flatTree.getFirstLeaf(node);)
+					storeMatch(flatTree.getLeaf(i),startXY);
+
+				int noCareChild = flatTree.getNoCareChild(node);
+				if (noCareChild!=FlatPatternTree.NO_NODE)
 				{
-//	    	    	assert(checkConsistency2());
-					matchingState[nextXY].add(noCareChild);
-//	    	    	assert(checkConsistency2());
+					int nextXY = flatTree.getOffset(noCareChild)+startXY;
+					if (nextXY>0 && nextXY<GoArray.MAX && matchingState[nextXY]!=null)
+					{
+//		    	    	assert(checkConsistency2());
+						markDirty(nextXY);
+						matchingState[nextXY].addNode(noCareChild);
+//		    	    	assert(checkConsistency2());
+					}
+					stackSize = push(noCareChild, stackSize);
 				}
-				recursiveMatchAndStoreState(noCareChild,startXY);
-			}
 
-			// Figure out what's on the board point to be examined next. 
-			// Appropriately update node
-			node = getNextNodeAndStoreState(node,startXY);
+				// Figure out what's on the board point to be examined next. 
+				// Appropriately update node
+				node = getNextNodeAndStoreState(node,startXY);
+			}
+			if (stackSize==0)
+				return;
+			node = _nodeStack[--stackSize];
 		}
 	}
 	
-	private void recursiveMatchAndRemoveState(IncrementalPatternTreeNode startNode, int startXY)
+	private void matchAndRemoveState(int startNode, int startXY)
 	{
-		IncrementalPatternTreeNode node = startNode;
-		// Some of the recursion has been unwound.  This loop deals with the
-		// main line.  NoCare branches handled by a recursive call on this routine.
-		while (node!=null)
+		FlatPatternTree flatTree = this.flatTree;
+		int stackSize = 0;
+		int node = startNode;
+		while (true)
 		{
-			IncrementalPatternTreeNode oldNode = node;
-			// Figure out what's on the board point to be examined next. 
-			// Appropriately update node
-			node = getNextNodeAndRemoveState(node,startXY);
-
-			IncrementalPatternTreeNode noCareChild = oldNode.getNoCareChild();
-			if (noCareChild!=null)
+			// This loop deals with the main line. NoCare branches are put on the stack to be matched after it.
+			while (node!=FlatPatternTree.NO_NODE)
 			{
-				int nextXY = noCareChild.getOffset()+startXY;
-				if (nextXY>0 && nextXY<GoArray.MAX && matchingState[nextXY]!=null)
-					matchingState[nextXY].remove(noCareChild);
-				recursiveMatchAndRemoveState(noCareChild,startXY);
-			}
+				int oldNode = node;
+				// Figure out what's on the board point to be examined next. 
+				// Appropriately update node
+				node = getNextNodeAndRemoveState(node,startXY);
+
+				int noCareChild = flatTree.getNoCareChild(oldNode);
+				if (noCareChild!=FlatPatternTree.NO_NODE)
+				{
+					int nextXY = flatTree.getOffset(noCareChild)+startXY;
+					if (nextXY>0 && nextXY<GoArray.MAX && matchingState[nextXY]!=null)
+					{
+						markDirty(nextXY);
+						matchingState[nextXY].removeNode(noCareChild);
+					}
+					stackSize = push(noCareChild, stackSize);
+				}
 
-			List<IncrementalPatternTreeLeaf> leafList = oldNode.getLeafList();
-			if (leafList!=null)
-				for (int i=leafList.size(); --i>=0;)
-					removeMatch(leafList.get(i),startXY);
+				for (int i=flatTree.getEndLeaf(oldNode); --i>=flatTree.getFirstLeaf(oldNode);)
+					removeMatch(flatTree.getLeaf(i),startXY);
+			}
+			if (stackSize==0)
+				return;
+			node = _nodeStack[--stackSize];
 		}
 	}
 	
+	/**
+	 * Push a node on the stack of no-care branches still to be matched.
+	 * 
+	 * @return the new size of the stack
+	 */
+	private int push(int node, int stackSize)
+	{
+		if (stackSize==_nodeStack.length)
+		{
+			int[] newStack = new int[_nodeStack.length*2];
+			System.arraycopy(_nodeStack, 0, newStack, 0, stackSize);
+			_nodeStack = newStack;
+		}
+		_nodeStack[stackSize] = node;
+		return stackSize+1;
+	}
+	
 	/**
 	 * Get the next node down the tree. The value on the actual board determines
 	 * which branch down is taken.
 	 * 
 	 * @param startXY point on the board where the matching started.
-	 * @param board
 	 * 
-	 * @return PatternTreeNode
+	 * @return the next node or NO_NODE
 	 */
-	private final IncrementalPatternTreeNode getNextNode(IncrementalPatternTreeNode node, int startXY)
+	private final int getNextNode(int node, int startXY)
 	{
-		int xy=startXY+node.getOffset();
+		int xy=startXY+flatTree.getOffset(node);
 		
 		if (xy<0 || xy>=GoArray.MAX)
-			return null;
+			return FlatPatternTree.NO_NODE;
 		else
-		{
-			switch (_boardModel.get(xy))
-			{
-				case EMPTY:
-					return node.getEmptyChild();
-				case BLACK:
-					return node.getBlackChild();
-				case WHITE:
-					return node.getWhiteChild();
-				case EDGE:
-					return node.getEdgeChild();
-				default:
-					return null;
-			}
-		}
+			return flatTree.getChild(node, _boardModel.get(xy));
 	}
 	
 	/**
@@ -397,21 +460,23 @@ public class IncrementalPatternMatcher
 	 * which branch down is taken.
 	 * 
 	 * @param startXY point on the board where the matching started.
-	 * @param board
 	 * 
-	 * @return PatternTreeNode
+	 * @return the next node or NO_NODE
 	 */
-	private final IncrementalPatternTreeNode getNextNodeAndStoreState(IncrementalPatternTreeNode node, int startXY)
+	private final int getNextNodeAndStoreState(int node, int startXY)
 	{
-		IncrementalPatternTreeNode nextNode = getNextNode(node,startXY);
-		if (nextNode!=null && !nextNode.isLeaf())
+		int nextNode = getNextNode(node,startXY);
+		if (nextNode!=FlatPatternTree.NO_NODE && !flatTree.isLeaf(nextNode))
 		{
-			int nextCoordinate = startXY + nextNode.getOffset();
+			int nextCoordinate = startXY + flatTree.getOffset(nextNode);
 			if (nextCoordinate>=0 && nextCoordinate<MAX)
 			{
 				MatchingState state = matchingState[nextCoordinate];
 				if (state!=null)
-					state.add(nextNode);
+				{
+					markDirty(nextCoordinate);
+					state.addNode(nextNode);
+				}
 //    	    	assert(checkConsistency2());
 			}
 		}
@@ -423,22 +488,21 @@ public class IncrementalPatternMatcher
 	 * which branch down is taken.
 	 * 
 	 * @param startXY point on the board where the matching started.
-	 * @param board
 	 * 
-	 * @return PatternTreeNode
+	 * @return the next node or NO_NODE
 	 */
-	private final IncrementalPatternTreeNode getNextNodeAndCheck(IncrementalPatternTreeNode node, int startXY)
+	private final int getNextNodeAndCheck(int node, int startXY)
 	{
-		IncrementalPatternTreeNode nextNode = getNextNode(node,startXY);
-		if (nextNode!=null && !nextNode.isLeaf())
+		int nextNode = getNextNode(node,startXY);
+		if (nextNode!=FlatPatternTree.NO_NODE && !flatTree.isLeaf(nextNode))
 		{
-			int nextCoordinate = startXY + nextNode.getOffset();
+			int nextCoordinate = startXY + flatTree.getOffset(nextNode);
 			if (nextCoordinate>=0 && nextCoordinate<MAX)
 			{
 				MatchingState state = matchingState[nextCoordinate];
 				if (state!=null)
 				{
-					if (state.findNode(nextNode)==null)
+					if (!state.hasNode(nextNode))
 						throw new IllegalStateException();
 				}
 			}
@@ -451,21 +515,23 @@ public class IncrementalPatternMatcher
 	 * which branch down is taken.
 	 * 
 	 * @param startXY point on the board where the matching started.
-	 * @param board
 	 * 
-	 * @return PatternTreeNode
+	 * @return the next node or NO_NODE
 	 */
-	private final IncrementalPatternTreeNode getNextNodeAndRemoveState(IncrementalPatternTreeNode node, int startXY)
+	private final int getNextNodeAndRemoveState(int node, int startXY)
 	{
-		IncrementalPatternTreeNode nextNode = getNextNode(node,startXY);
-		if (nextNode!=null && !nextNode.isLeaf())
+		int nextNode = getNextNode(node,startXY);
+		if (nextNode!=FlatPatternTree.NO_NODE && !flatTree.isLeaf(nextNode))
 		{
-			int nextCoordinate = startXY + nextNode.getOffset();
+			int nextCoordinate = startXY + flatTree.getOffset(nextNode);
 			if (nextCoordinate>=0 && nextCoordinate<MAX)
 			{
 				MatchingState state = matchingState[nextCoordinate];
 				if (state!=null)
-					state.remove(nextNode);
+				{
+					markDirty(nextCoordinate);
+					state.removeNode(nextNode);
+				}
 			}
 		}
 		return nextNode;
@@ -484,18 +550,31 @@ public class IncrementalPatternMatcher
 		PatternMatch match = PatternMatchFactory.createMatch(leaf, startXY);
 		match.setMoveNr(_moveNr);
 		_matchList.addMatch(match);
+		markDirty(startXY);
 		matchingState[startXY].add(match);
+		match.newListIndex = _newMatchList.size();
 		_newMatchList.add(match);
 	}
 
 	private void removeMatch(IncrementalPatternTreeLeaf leaf, int startXY)
 	{
+		markDirty(startXY);
 		PatternMatch match = matchingState[startXY].findAndRemoveMatch(leaf, startXY);
 		assert(match!=null); // It came here, there should be a match to be found.
 		if (match==null)
 			return; // Actually, it happens when patterns are added dynamically.
 		_matchList.removeMatch(match);
-		_deletedMatchList.add(match);
+		int index = match.newListIndex;
+		if (match.getMoveNr()==_moveNr && index<_newMatchList.size() && _newMatchList.get(index)==match)
+		{
+			// Found and lost again in the same update, so it never shows up in either list.
+			_newMatchList.remove(index);
+			if (index<_newMatchList.size())
+				_newMatchList.get(index).newListIndex = index;
+			match.recycle();
+		}
+		else
+			_deletedMatchList.add(match);
 	}
 
 	public void optimize()
@@ -512,13 +591,21 @@ public class IncrementalPatternMatcher
 	
 	public void recomputeTree()
 	{
+		_modificationCount++;
 		spiral = new PointSpiral();
 		tree = new FullPatternTree(group,spiral);
+		flatTree = new FlatPatternTree(tree);
 	}
 	
 	public void changeBoard(BoardChange event)
 	{
-		_boardChangeList.add(BoardChangeFactory.createClone(event));
+		if (_nrBoardChanges==_boardChanges.length)
+		{
+			int[] newBoardChanges = new int[_boardChanges.length*2];
+			System.arraycopy(_boardChanges, 0, newBoardChanges, 0, _nrBoardChanges);
+			_boardChanges = newBoardChanges;
+		}
+		_boardChanges[_nrBoardChanges++] = (event.getXY()<<8) | (event.getNewValue()&0xff);
 	}
 
 	/**
@@ -547,6 +634,8 @@ public class IncrementalPatternMatcher
     public void buildTree()
     {
     	tree.addPatterns(group.getPatternList());
+    	flatTree = new FlatPatternTree(tree);
+    	_modificationCount++;
     }
 
 	/**
@@ -583,45 +672,117 @@ public class IncrementalPatternMatcher
     
     public void copyDataFrom(IncrementalPatternMatcher source)
     {
+    	boolean canUndo = (source==_journalSource && source!=this
+    					&& source._modificationCount==_journalSourceModificationCount
+    					&& source.flatTree==flatTree
+    					&& source._boardModel.getBoardSize()==_boardModel.getBoardSize()
+    					&& _dirtyPoints.getSize()<_boardModel.getBoardSize()*_boardModel.getBoardSize()*3/4); // Past that point copying all states is cheaper.
+
     	spiral = source.spiral;
     	group = source.group;
     	tree = source.tree;
+    	flatTree = source.flatTree;
     	patternManager = source.patternManager;
     	
     	if (_boardModel.getBoardSize()==0)
     		_boardModel.setBoardSize(source._boardModel.getBoardSize());
     	System.arraycopy(source._boardModel.getSingleArray(), 0, _boardModel.getSingleArray() , 0, source._boardModel.getSingleArray().length);
 //    	GoArray.copy(source._boardModel.getSingleArray(), _boardModel.getSingleArray());
-    	_matchList.copyDataFrom(source._matchList);
-//    	assert(_matchList.equals(source._matchList));
     	clearDeletedMatches();
 //    	_deletedMatchList.clear(); // TODO - check for correctness.
     	_newMatchList.clear(); // TODO - check for correctness.
     	clearBoardChangeList();
     	_moveNr = source._moveNr;
+    	
+    	if (canUndo)
+    		_undoDataFrom(source);
+    	else
+    		_copyDataFrom(source);
+
+		_journalSource = source;
+		_journalSourceModificationCount = source._modificationCount;
+		resetJournal();
+		assert(isEqual(this,source));
+		if (_boardModel.hasListeners())
+			return;
+    }
+    
+    private void _copyDataFrom(IncrementalPatternMatcher source)
+    {
+    	// The matches get recycled by the MatchingStates they're in.
+    	_matchList.reset();
 		for (int i=0; i<GoArray.MAX; i++)
 		{
 			if (source.matchingState[i]!=null)
+			{
+				if (matchingState[i]==null)
+					matchingState[i] = new MatchingState();
 				matchingState[i].copyDataFrom(source.matchingState[i]);
+				addMatches(matchingState[i]);
+			}
+			else
+				matchingState[i] = null;
 		}
-		for (int i=0; i<_matchList.size(); i++)
-		{
-			PatternMatch match = _matchList.get(i);
-			matchingState[match.xy].add(match);
-		}   	
-		assert(isEqual(this,source));
-		if (_boardModel.hasListeners())
-			return;
     }
     
-    private void clearBoardChangeList()
+	/**
+	 * Bring the pattern-matcher back to the state of the source by only restoring the MatchingStates
+	 * of the points that were recorded as changed since the last copy. This relies on the source not
+	 * having changed since, which is the case during a playout.
+	 * Only copies that follow a few moves benefit, like those of a pattern-matcher that only follows the
+	 * moves in the tree. After a complete playout nearly all points changed and a full copy is cheaper.
+	 * 
+	 * @param source - the pattern-matcher the data was last copied from
+	 */
+    private void _undoDataFrom(IncrementalPatternMatcher source)
     {
-    	for (int i=_boardChangeList.size(); --i>=0;)
+    	for (int i=_dirtyPoints.getSize(); --i>=0;)
     	{
-    		BoardChange bc = _boardChangeList.get(i);
-    		bc.recycle();
+    		int xy = _dirtyPoints.get(i);
+    		MatchingState state = matchingState[xy];
+    		PatternMatchList stateMatchList = state.getMatchList();
+    		for (int m=stateMatchList.size(); --m>=0;)
+    			_matchList.removeMatch(stateMatchList.get(m));
+    		state.copyDataFrom(source.matchingState[xy]);
+    		addMatches(state);
     	}
-    	_boardChangeList.clear();
+    }
+    
+    private void addMatches(MatchingState state)
+    {
+		PatternMatchList stateMatchList = state.getMatchList();
+		for (int m=0; m<stateMatchList.size(); m++)
+			_matchList.addMatch(stateMatchList.get(m));
+    }
+    
+	/**
+	 * Start recording changes from scratch. Since this is only called when the data changed
+	 * as a whole, it also counts as a modification for pattern-matchers copying from this one.
+	 */
+	private void resetJournal()
+	{
+		_dirtyPoints.clear();
+		_dirtyMarker.getNewMarker();
+		_modificationCount++;
+	}
+	
+	/**
+	 * Record that the MatchingState of a point is about to change.
+	 * 
+	 * @param xy - coordinate of the point
+	 */
+	private void markDirty(int xy)
+	{
+		if (_dirtyMarker.notSet(xy))
+		{
+			_dirtyMarker.set(xy);
+			_dirtyPoints.push(xy);
+		}
+	}
+    
+    private void clearBoardChangeList()
+    {
+    	_nrBoardChanges = 0;
     }
     
     /**
@@ -633,31 +794,8 @@ public class IncrementalPatternMatcher
     public IncrementalPatternMatcher createClone()
     {
     	IncrementalPatternMatcher clone = new IncrementalPatternMatcher();
-    	
-    	clone.spiral = spiral;
-    	clone.group = group;
-    	clone.tree = tree;
-    	clone.patternManager = patternManager;
-    	
-    	clone._boardModel.setBoardSize(_boardModel.getBoardSize());
-    	System.arraycopy(_boardModel.getSingleArray(), 0, clone._boardModel.getSingleArray() , 0, _boardModel.getSingleArray().length);
-//    	clone._boardModel = _boardModel.createClone();
-    	clone._matchList = _matchList.createIndexedClone();
-    	clone._moveNr = _moveNr;
-
-		clone.matchingState = new MatchingState[GoArray.MAX];
-		for (int i=0; i<GoArray.MAX; i++)
-		{
-			if (matchingState[i]!=null)
-				clone.matchingState[i] = matchingState[i].createClone();
-		}
-		for (int i=0; i<clone._matchList.size(); i++)
-		{
-			PatternMatch match = clone._matchList.get(i);
-			clone.matchingState[match.xy].add(match);
-		}
-		
-		assert(isEqual(this,clone));
+    	clone.setBoardSize(_boardModel.getBoardSize());
+    	clone.copyDataFrom(this);
 
 		return clone;
     }
@@ -681,7 +819,7 @@ public class IncrementalPatternMatcher
 			{
 				assert(set1.matchingState[i].equals(set2.matchingState[i]));
 				assert(set1.matchingState[i].getMatchList().size()==set2.matchingState[i].getMatchList().size());
-				assert(set1.matchingState[i].getNodeList().size()==set2.matchingState[i].getNodeList().size());
+				assert(set1.matchingState[i].getNrNodes()==set2.matchingState[i].getNrNodes());
 				for (int j=set1.matchingState[i].getMatchList().size(); --j>=0;)
 				{
 					PatternMatch match = set1.matchingState[i].getMatchList().get(j);
@@ -26,18 +26,33 @@
 
 package tesuji.games.go.pattern.incremental;
 
-import java.util.HashMap;
-
-import tesuji.core.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 
 /**
- * 
+ * The state of the pattern-matching at a point: the matches that start at the point and
+ * the nodes of the FlatPatternTree that examine the point, which need to be matched again
+ * when the point changes.<br>
+ * <br>
+ * Points in busy areas can have hundreds of matches and nodes, so both are indexed by a small
+ * open-addressing hash-table, with linear probing, to find and remove them in constant time.
+ * A match stores its own index in the match-list, the node-table stores the index of the node
+ * in the node-array. Removal fills the hole in the list or array with the last one.
  */
 public class MatchingState
 {
-	// TODO - determine appropriate starting size.
+	private static final int INITIAL_SIZE = 16;
+
 	private PatternMatchList _matchList = new PatternMatchList();
-	private ArrayList<IncrementalPatternTreeNode> _nodeList = new ArrayList<IncrementalPatternTreeNode>(100);
+	private PatternMatch[] _matchTable = new PatternMatch[INITIAL_SIZE*2];
+
+	private int[] _nodes = new int[INITIAL_SIZE];
+	private int _nrNodes;
+	/**
+	 * The index+1 in _nodes of the node hashed to each slot, 0 for an empty slot.
+	 */
+	private int[] _nodeTable = new int[INITIAL_SIZE*2];
+
 	/**
      * @return the matchList
      */
@@ -45,78 +60,222 @@ public class MatchingState
     {
     	return _matchList;
     }
-	/**
-     * @return the nodeList
-     */
-    public ArrayList<IncrementalPatternTreeNode> getNodeList()
+    public int getNrNodes()
     {
-    	return _nodeList;
+    	return _nrNodes;
+    }
+    
+    public int getNode(int index)
+    {
+    	return _nodes[index];
     }
     
     public void clear()
     {
     	_matchList.clear();
-    	_nodeList.clear();
+    	Arrays.fill(_matchTable, null);
+    	_nrNodes = 0;
+    	Arrays.fill(_nodeTable, 0);
     }
 
     public void add(PatternMatch match)
     {
+    	assert(findMatch(match.leaf, match.xy)==null);
+    	if ((_matchList.size()+1)*2>_matchTable.length)
+    		growMatchTable();
+    	match.stateIndex = _matchList.size();
     	_matchList.add(match);
+    	int mask = _matchTable.length-1;
+    	int slot = hash(match.leaf, match.xy, mask);
+    	while (_matchTable[slot]!=null)
+    		slot = (slot+1) & mask;
+    	_matchTable[slot] = match;
     }
     
     public PatternMatch findAndRemoveMatch(IncrementalPatternTreeLeaf leaf, int startXY)
     {
-    	for (int i=_matchList.size(); --i>=0;)
+    	int slot = findMatchSlot(leaf, startXY);
+    	assert slot>=0; // Should never come here.
+    	if (slot<0)
+    		return null;
+
+    	PatternMatch match = _matchTable[slot];
+    	removeMatchSlot(slot);
+    	int index = match.stateIndex;
+    	_matchList.remove(index);
+    	if (index<_matchList.size())
+    		_matchList.get(index).stateIndex = index;
+    	return match;
+    }
+    
+    public PatternMatch findMatch(IncrementalPatternTreeLeaf leaf, int startXY)
+    {
+    	int slot = findMatchSlot(leaf, startXY);
+    	return (slot<0)? null : _matchTable[slot];
+    }
+    
+    private static int hash(IncrementalPatternTreeLeaf leaf, int xy, int mask)
+    {
+    	return mix(leaf.hashCode()+xy) & mask;
+    }
+    
+    private static int mix(int key)
+    {
+    	int h = key * 0x9E3779B9;
+    	return h ^ (h>>>16);
+    }
+    
+    private int findMatchSlot(IncrementalPatternTreeLeaf leaf, int xy)
+    {
+    	int mask = _matchTable.length-1;
+    	int slot = hash(leaf, xy, mask);
+    	PatternMatch match;
+    	while ((match=_matchTable[slot])!=null)
     	{
-    		PatternMatch match = _matchList.get(i);
-    		if (match.getLeaf()==leaf && match.getXY()==startXY)
+    		if (match.leaf==leaf && match.xy==xy)
+    			return slot;
+    		slot = (slot+1) & mask;
+    	}
+    	return -1;
+    }
+    
+    /**
+     * Empty a slot of the match-table and move the matches after it that
+     * can't be found anymore because of the hole into it.
+     */
+    private void removeMatchSlot(int slot)
+    {
+    	int mask = _matchTable.length-1;
+    	int hole = slot;
+    	int next = slot;
+    	while (true)
+    	{
+    		next = (next+1) & mask;
+    		PatternMatch match = _matchTable[next];
+    		if (match==null)
+    			break;
+    		int home = hash(match.leaf, match.xy, mask);
+    		if (isOutside(home, hole, next))
     		{
-    			_matchList.remove(i);
-    			return match;
+    			_matchTable[hole] = match;
+    			hole = next;
     		}
     	}
-    	assert false; // Should never come here.
-    	return null;
+    	_matchTable[hole] = null;
     }
     
-    public PatternMatch findMatch(IncrementalPatternTreeLeaf leaf, int startXY)
+    /**
+     * @return whether home lies outside the cyclic range from hole (exclusive) to next (inclusive),
+     * in which case the entry at next must be moved into the hole.
+     */
+    private static boolean isOutside(int home, int hole, int next)
+    {
+    	if (next>hole)
+    		return (home<=hole || home>next);
+    	return (home<=hole && home>next);
+    }
+    
+    private void growMatchTable()
     {
+    	_matchTable = new PatternMatch[_matchTable.length*2];
+    	int mask = _matchTable.length-1;
     	for (int i=_matchList.size(); --i>=0;)
     	{
     		PatternMatch match = _matchList.get(i);
-    		if (match.getLeaf()==leaf && match.getXY()==startXY)
-    			return match;
+        	int slot = hash(match.leaf, match.xy, mask);
+        	while (_matchTable[slot]!=null)
+        		slot = (slot+1) & mask;
+        	_matchTable[slot] = match;
+    	}
+    }
+    
+    boolean hasNode(int node)
+    {
+    	return findNodeSlot(node)>=0;
+    }
+    
+    public void addNode(int node)
+    {
+    	assert(!hasNode(node));
+    	if (_nrNodes==_nodes.length)
+    	{
+    		int[] newNodes = new int[_nodes.length*2];
+    		System.arraycopy(_nodes, 0, newNodes, 0, _nrNodes);
+    		_nodes = newNodes;
+    		growNodeTable();
     	}
-    	return null;
+    	_nodes[_nrNodes++] = node;
+    	int mask = _nodeTable.length-1;
+    	int slot = mix(node) & mask;
+    	while (_nodeTable[slot]!=0)
+    		slot = (slot+1) & mask;
+    	_nodeTable[slot] = _nrNodes;
     }
     
-    IncrementalPatternTreeNode findNode(IncrementalPatternTreeNode node)
+    public void removeNode(int node)
     {
-    	for (int i=_nodeList.size(); --i>=0;)
+    	int slot = findNodeSlot(node);
+    	assert(slot>=0);
+    	if (slot<0)
+    		return;
+
+    	int index = _nodeTable[slot]-1;
+    	removeNodeSlot(slot);
+    	int last = _nodes[--_nrNodes];
+    	if (index!=_nrNodes)
     	{
-    		if (_nodeList.get(i)==node)
-    			return node;
+			// The order doesn't matter, so fill the hole with the last one.
+    		_nodeTable[findNodeSlot(last)] = index+1;
+    		_nodes[index] = last;
     	}
-    	return null;
     }
     
-    public void add(IncrementalPatternTreeNode node)
+    private int findNodeSlot(int node)
     {
-    	assert(findNode(node)==null);
-    	_nodeList.add(node);
+    	int mask = _nodeTable.length-1;
+    	int slot = mix(node) & mask;
+    	int entry;
+    	while ((entry=_nodeTable[slot])!=0)
+    	{
+    		if (_nodes[entry-1]==node)
+    			return slot;
+    		slot = (slot+1) & mask;
+    	}
+    	return -1;
     }
     
-    public void remove(IncrementalPatternTreeNode node)
+    private void removeNodeSlot(int slot)
     {
-    	for (int i=_nodeList.size(); --i>=0;)
+    	int mask = _nodeTable.length-1;
+    	int hole = slot;
+    	int next = slot;
+    	while (true)
     	{
-    		if (_nodeList.get(i)==node)
+    		next = (next+1) & mask;
+    		int entry = _nodeTable[next];
+    		if (entry==0)
+    			break;
+    		int home = mix(_nodes[entry-1]) & mask;
+    		if (isOutside(home, hole, next))
     		{
-    			_nodeList.delete(i); // XXX - remove
-    			return;
+    			_nodeTable[hole] = entry;
+    			hole = next;
     		}
     	}
-    	assert(false);
+    	_nodeTable[hole] = 0;
+    }
+    
+    private void growNodeTable()
+    {
+    	_nodeTable = new int[_nodes.length*2];
+    	int mask = _nodeTable.length-1;
+    	for (int i=0; i<_nrNodes; i++)
+    	{
+        	int slot = mix(_nodes[i]) & mask;
+        	while (_nodeTable[slot]!=0)
+        		slot = (slot+1) & mask;
+        	_nodeTable[slot] = i+1;
+    	}
     }
        
     public boolean hasMatches()
@@ -126,38 +285,66 @@ public class MatchingState
     
     public boolean hasNodes()
     {
-    	return !_nodeList.isEmpty();
+    	return _nrNodes!=0;
     }
    
+    /**
+     * Make this state the same as the source, with copies of its matches.
+     * The matches this state had get recycled. The arrays are reused when they're big enough.
+     * 
+     * @param source
+     */
     public void copyDataFrom(MatchingState source)
     {
-    	_matchList.reset();
-    	_nodeList.clear();
-    	for (int i=0; i<source._nodeList.size(); i++)
-    		_nodeList.add(source._nodeList.get(i));
+    	_matchList.clear();
+    	if (_matchTable.length==source._matchTable.length)
+    		Arrays.fill(_matchTable, null);
+    	else
+    		_matchTable = new PatternMatch[source._matchTable.length];
+    	PatternMatchList sourceMatchList = source._matchList;
+    	for (int i=0; i<sourceMatchList.size(); i++)
+    		_matchList.add(sourceMatchList.get(i).createClone());
+    	for (int i=_matchTable.length; --i>=0;)
+    	{
+    		// The copies are in the same order, so they go in the same slots.
+    		if (source._matchTable[i]!=null)
+    			_matchTable[i] = _matchList.get(source._matchTable[i].stateIndex);
+    	}
+
+    	if (_nodes.length!=source._nodes.length)
+    	{
+    		_nodes = new int[source._nodes.length];
+    		_nodeTable = new int[source._nodeTable.length];
+    	}
+    	System.arraycopy(source._nodes, 0, _nodes, 0, source._nrNodes);
+    	System.arraycopy(source._nodeTable, 0, _nodeTable, 0, _nodeTable.length);
+    	_nrNodes = source._nrNodes;
     }
     
     public MatchingState createClone()
     {
     	MatchingState clone = new MatchingState();
-    	clone._matchList = new PatternMatchList();
-    	clone._nodeList = _nodeList.createClone();
-    	
+    	clone.copyDataFrom(this);
     	return clone;
     }
     
     public boolean checkConsistency(IncrementalPatternMatcher matcher)
     {
-    	HashMap<Integer, IncrementalPatternTreeNode> map = new HashMap<Integer, IncrementalPatternTreeNode>();
+    	HashSet<Integer> set = new HashSet<Integer>();
     	
        	for (int i=_matchList.size(); --i>=0;)
-       		assert(matcher.getMatchList().contains(_matchList.get(i)));
+       	{
+       		PatternMatch match = _matchList.get(i);
+       		assert(matcher.getMatchList().contains(match));
+       		assert(match.stateIndex==i);
+       		assert(findMatch(match.leaf, match.xy)==match);
+       	}
 
-        for (int i=_nodeList.size(); --i>=0;)
-    	{
-       		assert (map.get(_nodeList.get(i).id)==null);
-       		map.put(_nodeList.get(i).id, _nodeList.get(i));
-    	}
+        for (int i=_nrNodes; --i>=0;)
+        {
+       		assert(set.add(_nodes[i]));
+       		assert(_nodeTable[findNodeSlot(_nodes[i])]==i+1);
+        }
     	return true;
     }
     
@@ -175,10 +362,9 @@ public class MatchingState
     			return false;
     	}
     	
-    	for (int i=0; i<compare._nodeList.size(); i++)
+    	for (int i=0; i<compare._nrNodes; i++)
     	{
-    		IncrementalPatternTreeNode node = compare._nodeList.get(i);
-    		if (findNode(node)==null)
+    		if (!hasNode(compare._nodes[i]))
     			return false;
     	}
     	
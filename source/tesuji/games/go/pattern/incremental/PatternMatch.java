@@ -50,6 +50,8 @@ public class PatternMatch
 	int xy;
 
 	int matchListIndex;
+	int stateIndex;		// Index in the match-list of the MatchingState of xy.
+	int newListIndex;	// Index in the new-match list of the pattern-matcher, if it was found in the last update.
 	int moveNr;
 	
 	private SynchronizedArrayStack<PatternMatch> _owner;
@@ -259,6 +261,11 @@ public class PatternMatch
 		PatternMatch compare = (PatternMatch)o;
 		return (xy==compare.xy && leaf==compare.leaf);
 	}
+	
+	public int hashCode()
+	{
+		return leaf.hashCode()*31 + xy;
+	}
 
 	public String toString()
 	{
@@ -300,6 +307,7 @@ public class PatternMatch
     	clone.xy = xy;
     	clone.moveNr = moveNr;
     	clone.matchListIndex = matchListIndex;
+    	clone.stateIndex = stateIndex;
  
     	return clone;
     }
@@ -52,7 +52,6 @@ import tesuji.games.go.common.GoMoveFactory;
 import tesuji.games.go.util.DefaultDoubleArrayProvider;
 import tesuji.games.go.util.GoArray;
 import tesuji.games.go.util.IntStack;
-import tesuji.games.go.util.PointSet;
 
 import static tesuji.games.general.ColorConstant.*;
 import static tesuji.games.go.util.GoArray.createDoubles;
@@ -91,6 +90,24 @@ public class HashMapSearch<MoveType extends Move>
 	
 	private int _nrSimulatedMoves;
 	
+	/**
+	 * The threads to search in and the search-processes that run in them. These are
+	 * kept between moves, so the administrations of the processes get created only once.
+	 */
+	private SearchThreads _searchThreads = new SearchThreads(getClass().getSimpleName())
+	{
+		@Override
+		protected Process createProcess()
+		{
+			return new SearchProcess();
+		}
+	};
+	/**
+	 * Set when the time for the search ran out, after which the search-processes
+	 * stop as soon as the required number of playouts have been performed.
+	 */
+	private volatile boolean _timeUp;
+	
 	private static long _nrGeneratedMoves;
 	private static long _totalNrPlayouts;
 	private static int _averagePlayouts;
@@ -113,6 +130,8 @@ public class HashMapSearch<MoveType extends Move>
 	public void setMonteCarloAdministration(MonteCarloAdministration<MoveType> administration)
 	{
 		_monteCarloAdministration = administration;
+		_searchThreads.discardProcesses();
+		_searchThreads.shutdown();
 		initRoot();
 		
 		GoArray.clear(_ownershipArray);
@@ -167,47 +186,30 @@ public class HashMapSearch<MoveType extends Move>
 		_nrGeneratedMoves++;
 
 		long time1 = System.currentTimeMillis();
-		long time2;
 		long timeLimit = calculateTimeLimit();
 		if (isOptimizeNodeLimit())
 			_nodeLimit = calculateNodeLimit();
 		else
 			_nodeLimit = _minimumNrNodes;
 		
-		// Create a thread for each available processor and start a search in it.
-		Thread[] threads = new Thread[_nrThreads];
-		Runnable[] searchProcesses = new Runnable[_nrThreads];
-		for (int t=0; t<_nrThreads; t++)
-		{
-			searchProcesses[t] = new SearchProcess(startColor);
-			threads[t] = new Thread(searchProcesses[t]);
-			threads[t].start();
-		}
-
-		boolean active = true;
+		_timeUp = false;
+		_searchThreads.start(startColor, _nrThreads, _monteCarloAdministration.getBoardSize());
 
-		// Now loop for the required amount of time or until
-		// the required number of playouts have been performed.
+		// Now wait for the required amount of time. After that the processes keep
+		// going until the required number of playouts have been performed.
 		// It also stops when no processor remains active, although
 		// a search-thread stopping by itself is most likely a bug.
-		do
+		if (!_searchThreads.waitForCompletion(time1+timeLimit))
 		{
-			Thread.sleep(10);
-			active = false;
-			for (int t=0; t<_nrThreads; t++)
-				if (threads[t].isAlive())
-					active = true;
-			time2 = System.currentTimeMillis();
-		}
-		while (active && (_nrPlayouts<_nodeLimit || (time2-time1)<timeLimit));
-		
-		// Tell all the threads to stop
-		for (int t=0; t<_nrThreads; t++)
-			((SearchProcess)searchProcesses[t]).stop();
+			_timeUp = true;
+			
+			// Tell all the threads to stop if there's no need to wait for more playouts.
+			if (_nrPlayouts>=_nodeLimit)
+				_searchThreads.stop();
 
-		// Then wait for them to terminate.
-		for (int t=0; t<_nrThreads; t++)
-				threads[t].join();
+			// Then wait for them to terminate.
+			_searchThreads.join();
+		}
 				
 		_totalNrPlayouts += _nrPlayouts;
 		_averagePlayouts = (int) (_totalNrPlayouts/_nrGeneratedMoves);
@@ -467,6 +469,8 @@ public class HashMapSearch<MoveType extends Move>
 		reset();
 		_lastScore = 0.0;
 		DataProviderList.getSingleton().addDataProvider(new DefaultDoubleArrayProvider("Ownership", _ownershipArray, _monteCarloAdministration.getBoardSize()));
+		// A search gets cleared between games and before it's discarded, so let go of the threads until the next search.
+		_searchThreads.shutdown();
     }
     
     protected void reset()
@@ -595,7 +599,7 @@ public class HashMapSearch<MoveType extends Move>
 	
 	private boolean reachedStopCondition()
 	{
-		if (_nrPlayouts>=_nodeLimit && _secondsPerMove==0)
+		if (_nrPlayouts>=_nodeLimit && (_secondsPerMove==0 || _timeUp))
 			return true;
 		
 //		if ((_nrPlayouts&15)==0 && _nodeLimit>0 && _secondsPerMove==0)
@@ -635,19 +639,18 @@ public class HashMapSearch<MoveType extends Move>
 	 *	as many SearchProcess instances as we have processors available.
 	 */
     class SearchProcess
-    	implements Runnable
+    	implements SearchThreads.Process
     {
     	byte _startColor;
-    	private boolean running;
+    	private volatile boolean running;
 		private MonteCarloAdministration<MoveType> _searchAdministration;
 		private double[] _weightMap;
 		private byte[] _colorMap;
 		private IntStack _moveStack;
 		private ArrayStack<MonteCarloHashMapResult> _resultStack;
     	
-    	public SearchProcess(byte startColor)
+    	public SearchProcess()
     	{
-    		_startColor = startColor;
     		running = false;
     		_searchAdministration = _monteCarloAdministration.createClone();
     		_weightMap = createDoubles();
@@ -658,7 +661,6 @@ public class HashMapSearch<MoveType extends Move>
     	
     	public void run()
     	{
-    		running = true;
     		int nrDuplicateRuns = 0;
     		do
     		{
@@ -715,13 +717,14 @@ public class HashMapSearch<MoveType extends Move>
 					    	color = opposite(playoutNode.getColor());
 							boolean playerWins = (blackWins && color==BLACK) || (!blackWins && color==WHITE);
 							double score = playerWins ? MonteCarloTreeSearchResult.MAX_SCORE : MonteCarloTreeSearchResult.MIN_SCORE;
-							PointSet points = playoutNode.getEmptyPoints();
-							for (int p=0; p<points.getSize(); p++)
+							for (int m=playoutNode.getNrMoves(); --m>=0;)
 							{
-								int xy = points.get(p);
-								double weightXY = _weightMap[xy];
+								int xy = playoutNode.getMove(m);
 								if (_colorMap[xy]==color)
-									playoutNode.increaseVirtualPlayouts(xy,weightXY*score,weightXY);
+								{
+									double weightXY = _weightMap[xy];
+									playoutNode.increaseVirtualPlayoutsAt(m,weightXY*score,weightXY);
+								}
 							}
 						}
 	    			}
@@ -743,6 +746,16 @@ public class HashMapSearch<MoveType extends Move>
     		while (running);
     	}
     	
+    	/**
+    	 * Get ready for a new search. This gets called before the process is started,
+    	 * so a call to stop() can't get lost.
+    	 */
+    	public void prepare(byte startColor)
+    	{
+    		_startColor = startColor;
+    		running = true;
+    	}
+    	
     	public void stop()
     	{
     		running = false;
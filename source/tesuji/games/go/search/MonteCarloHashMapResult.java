@@ -4,11 +4,11 @@ import static tesuji.games.general.ColorConstant.BLACK;
 import static tesuji.games.general.ColorConstant.WHITE;
 
 import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
 
 import tesuji.core.util.MersenneTwisterFast;
 import tesuji.core.util.SynchronizedArrayStack;
 import tesuji.games.general.ColorConstant;
-import tesuji.games.general.GlobalParameters;
 import tesuji.games.general.search.SearchResult;
 import tesuji.games.go.common.GoConstant;
 import tesuji.games.go.common.GoMove;
@@ -18,7 +18,6 @@ import tesuji.games.go.monte_carlo.move_generator.MoveGenerator;
 import tesuji.games.go.util.GoArray;
 import tesuji.games.go.util.PointSet;
 import tesuji.games.go.util.PointSetFactory;
-import tesuji.games.go.util.ProbabilityMap;
 
 public class MonteCarloHashMapResult
 {
@@ -35,21 +34,75 @@ public class MonteCarloHashMapResult
 	 */
 	private static final double _explorationFactor = Math.sqrt(0.2);
 
+	/**
+	 * Lookup-tables for log(n+1) and 1/sqrt(n+1), so the selection of the next move
+	 * to explore doesn't need to compute them for every move. Beyond the size of the
+	 * tables they get computed after all.
+	 */
+	private static final int TABLE_SIZE = 1<<16;
+	private static final double[] LOG_TABLE = new double[TABLE_SIZE];
+	private static final double[] INVERSE_SQRT_TABLE = new double[TABLE_SIZE];
+	static
+	{
+		for (int i=0; i<TABLE_SIZE; i++)
+		{
+			LOG_TABLE[i] = Math.log(i+1.0f);
+			INVERSE_SQRT_TABLE[i] = 1.0 / Math.sqrt(i+1.0);
+		}
+	}
+
+	/**
+	 * Once a node has had this many playouts, the best move to explore is only looked for among
+	 * a small list of candidates, which gets rebuilt from all the moves every RESCAN_INTERVAL times.
+	 * Near the root the values of the moves that aren't explored change only slowly, so it's
+	 * unlikely one of them would overtake all of the candidates in the meantime.
+	 */
+	private static final int CANDIDATE_THRESHOLD = 1024;
+	private static final int NR_CANDIDATES = 8;
+	private static final int RESCAN_INTERVAL = 16;
+	private static final int[] NO_CANDIDATES = new int[0];
+
 	private int			_xy;
 	private byte		_color;
 	private int			_totalPlayouts;
+	/**
+	 * The moves to try from this position, in random order, and the statistics for each of them
+	 * at the same index. Only the first _nrMoves entries are used, the arrays are re-used when
+	 * the result is recycled and only replaced when they're too small.
+	 */
+	private int			_nrMoves;
+	private short[]		_moves;
 	private int[]		_wins;
 	private int[]		_playouts;
-	private PointSet	_emptyPoints;
 	private float[]		_virtualWins;
 	private float[]		_virtualPlayouts;
+	/**
+	 * The virtual loss of the search-threads busy with a playout after each move. It's kept apart
+	 * from the other statistics and only changed atomically, as the threads add and remove it
+	 * concurrently, so that it always returns to zero once they're done. It counts as lost playouts
+	 * in computeResultAt().
+	 */
+	private AtomicIntegerArray	_virtualLosses;
+	/**
+	 * The same moves sorted by location, each packed together with its index in the other
+	 * arrays as (xy<<16 | index). Finding the index of a move is a binary search in here.
+	 */
+	private int[]		_sortedMoves;
 	private double		_logNrPlayouts;
+	private double		_sqrtLogNrPlayouts;
 	private double		_beta;
 	private int			_age;
 	private long		_checksum;
-	private int			_bestMove;
+	private int			_bestIndex;
 	private double		_bestResult;
 	public boolean		usedLastBest;
+	/**
+	 * The indices of the candidates, from best to worst. All the search-threads select moves from the
+	 * same result, so the list is built in local arrays and only published when it's complete,
+	 * after which it doesn't change anymore.
+	 */
+	private volatile int[]	_candidates = NO_CANDIDATES;
+	private int			_nrCandidateVisits;
 	
 	private int _boardSize;
 	
@@ -63,11 +116,18 @@ public class MonteCarloHashMapResult
 	
 	MonteCarloHashMapResult()
 	{
-		_emptyPoints = PointSetFactory.createPointSet();
-		_wins = GoArray.createIntegers();
-		_playouts = GoArray.createIntegers();
-		_virtualWins = GoArray.createFloats();
-		_virtualPlayouts = GoArray.createFloats();
+		allocate(0);
+	}
+	
+	private void allocate(int size)
+	{
+		_moves = new short[size];
+		_sortedMoves = new int[size];
+		_wins = new int[size];
+		_playouts = new int[size];
+		_virtualWins = new float[size];
+		_virtualPlayouts = new float[size];
+		_virtualLosses = new AtomicIntegerArray(size);
 	}
 	
 	public void setPointSet(MonteCarloPluginAdministration administration)
@@ -75,46 +135,26 @@ public class MonteCarloHashMapResult
 		MersenneTwisterFast random = administration.RANDOM;
 		_boardSize = administration.getBoardSize();
 
-		assert(_emptyPoints.getSize()==0);
+		assert(_nrMoves==0);
 		PointSet copy = PointSetFactory.createPointSet();
 		copy.copyFrom(administration.getEmptyPoints());
-//		boolean isTestVersion = GlobalParameters.isTestVersion();
-		ProbabilityMap map = administration.getProbabilityMap();
-		byte colorToMove = administration.getColorToMove();
+		int maxNrMoves = copy.getSize()+1;
+		if (_moves.length<maxNrMoves)
+			allocate(maxNrMoves);
 		for (int size = copy.getSize(); size>0; size--)
 		{
 			int xy = copy.get(random.nextInt(size));
 			copy.remove(xy);
 			if (administration.isLegal(xy) && !administration.isVerboten(xy))
-			{
-				_emptyPoints.add(xy);
-//				if (isTestVersion)
-//				{
-//					float weight = (float)map.getWeight(xy, colorToMove);
-//					float factor = (float)Math.log(weight);
-//					if (weight<1.0)
-//						weight = 0.0f;
-//					else
-//						weight -= 1.0f;
-//					if (factor<1)
-//						factor = 1.0f;
-//					_virtualPlayouts[xy] = weight/factor;
-//					_virtualWins[xy] = weight;
-//				}
-//				else
-				{
-					_virtualPlayouts[xy] = 0.0f;
-					_virtualWins[xy] = 0.0f;
-				}
-			}
+				addMove(xy);
 		}
 		copy.recycle();
 		if (administration.isGameAlmostFinished())
-		{
-			_virtualPlayouts[GoConstant.PASS] = 0;
-			_virtualWins[GoConstant.PASS] = 0;
-			_emptyPoints.add(GoConstant.PASS);
-		}
+			addMove(GoConstant.PASS);
+		
+		for (int i=0; i<_nrMoves; i++)
+			_sortedMoves[i] = (_moves[i]<<16) | i;
+		Arrays.sort(_sortedMoves, 0, _nrMoves);
 		
 		for (MoveGenerator generator : administration.getExplorationMoveGeneratorList())
 		{
@@ -122,7 +162,41 @@ public class MonteCarloHashMapResult
 			if (xy!=GoConstant.UNDEFINED_COORDINATE)
 				increaseVirtualPlayouts(xy, generator.getUrgency(), generator.getUrgency());
 		}
-		assert(_emptyPoints.freeze());
+	}
+	
+	private void addMove(int xy)
+	{
+		int index = _nrMoves++;
+		_moves[index] = (short)xy;
+		_wins[index] = 0;
+		_playouts[index] = 0;
+		_virtualWins[index] = 0.0f;
+		_virtualPlayouts[index] = 0.0f;
+		_virtualLosses.set(index, 0);
+	}
+	
+	/**
+	 * @param xy
+	 * 
+	 * @return the index of the statistics of the move at xy, or -1 when it's not one of the moves to try.
+	 */
+	public int getIndex(int xy)
+	{
+		int low = 0;
+		int high = _nrMoves-1;
+		while (low<=high)
+		{
+			int middle = (low+high)>>>1;
+			int packed = _sortedMoves[middle];
+			int middleXY = packed>>>16;
+			if (middleXY<xy)
+				low = middle+1;
+			else if (middleXY>xy)
+				high = middle-1;
+			else
+				return packed&0xffff;
+		}
+		return -1;
 	}
 	
 	public void copyDataFrom(MonteCarloHashMapResult source)
@@ -130,16 +204,21 @@ public class MonteCarloHashMapResult
 		_xy = source._xy;
 		_color = source._color;
 		_totalPlayouts = source._totalPlayouts;
-		_wins = Arrays.copyOf(source._wins, source._wins.length);
-		_playouts = Arrays.copyOf(source._playouts, source._playouts.length);
-		_virtualWins = Arrays.copyOf(source._virtualWins, source._virtualWins.length);
-		_virtualPlayouts = Arrays.copyOf(source._virtualPlayouts, source._virtualPlayouts.length);
-		_emptyPoints.copyFrom(source._emptyPoints);
+		_nrMoves = source._nrMoves;
+		_moves = Arrays.copyOf(source._moves, source._nrMoves);
+		_sortedMoves = Arrays.copyOf(source._sortedMoves, source._nrMoves);
+		_wins = Arrays.copyOf(source._wins, source._nrMoves);
+		_playouts = Arrays.copyOf(source._playouts, source._nrMoves);
+		_virtualWins = Arrays.copyOf(source._virtualWins, source._nrMoves);
+		_virtualPlayouts = Arrays.copyOf(source._virtualPlayouts, source._nrMoves);
+		_virtualLosses = new AtomicIntegerArray(source._nrMoves);
 		_logNrPlayouts = source._logNrPlayouts;
+		_sqrtLogNrPlayouts = source._sqrtLogNrPlayouts;
+		_candidates = NO_CANDIDATES;
 		_beta = source._beta;
 		_age = source._age;
 		_checksum = source._checksum;
-		_bestMove = source._bestMove;
+		_bestIndex = source._bestIndex;
 		_bestResult = source._bestResult;
 		usedLastBest = source.usedLastBest;
 		_boardSize = source._boardSize;
@@ -149,30 +228,38 @@ public class MonteCarloHashMapResult
 	{
 		_xy = GoConstant.UNDEFINED_COORDINATE;
 		_logNrPlayouts = 0.0;
+		_sqrtLogNrPlayouts = 0.0;
 		_beta = 0.0;
+		_candidates = NO_CANDIDATES;
 		_totalPlayouts = 0;
-		_bestMove = GoConstant.PASS;
+		_bestIndex = -1;
 		_bestResult = -1.0;
 		usedLastBest = false;
-		
-		_emptyPoints.clear();
-		GoArray.clear(_playouts);
-		GoArray.clear(_wins);
-		GoArray.clear(_virtualWins);
-		GoArray.clear(_virtualPlayouts);
-//		GoArray.clear(_results);
+		_nrMoves = 0;
 	}
 
 //	@Override
     public void recycle()
     {
-    	assert(_emptyPoints.unfreeze());
 		_owner.push(this);
     }
 
-	public PointSet getEmptyPoints()
+	/**
+	 * @return the number of moves to try from this position.
+	 */
+	public int getNrMoves()
 	{
-		return _emptyPoints;
+		return _nrMoves;
+	}
+	
+	/**
+	 * @param index - between 0 and getNrMoves()
+	 * 
+	 * @return the location of the move at index.
+	 */
+	public int getMove(int index)
+	{
+		return _moves[index];
 	}
 	
     public boolean isBetterResultThan(int xy1, int xy2)
@@ -180,10 +267,12 @@ public class MonteCarloHashMapResult
 		if (xy2==GoConstant.PASS)
 			return true;
 		
-		if (_playouts[xy1]>_playouts[xy2])
+		int playouts1 = getPlayouts(xy1);
+		int playouts2 = getPlayouts(xy2);
+		if (playouts1>playouts2)
 			return true;
 
-		if (_playouts[xy1]==_playouts[xy2])
+		if (playouts1==playouts2)
 		{
 			double value = getWinRatio(xy1);
 			double compareValue = getWinRatio(xy2);
@@ -207,29 +296,20 @@ public class MonteCarloHashMapResult
 //		return getWinRatio(xy)<HOPELESS;
     }
 
-//	public void setChecksum(long checksum)
-//    {
-//	    _checksum = checksum;
-//    }
-//
-//	public long getChecksum()
-//    {
-//	    return _checksum;
-//    }
-
-//	public void setPlayouts(int playouts)
-//    {
-//	    _playouts = playouts;
-//    }
-
 	public int getWins(int xy)
     {
-	    return _wins[xy];
+		int index = getIndex(xy);
+		if (index<0)
+			return 0;
+	    return _wins[index];
     }
 
 	public int getPlayouts(int xy)
     {
-	    return _playouts[xy];
+		int index = getIndex(xy);
+		if (index<0)
+			return 0;
+	    return _playouts[index];
     }
 	
 	public int getPlayouts()
@@ -242,10 +322,11 @@ public class MonteCarloHashMapResult
 	 */
 	public double getWinRatio(int xy)
 	{
-		if (_playouts[xy] == 0)
+		int index = getIndex(xy);
+		if (index<0 || _playouts[index] == 0)
 			return 0.0;
 
-		return (double)_wins[xy] / (double)_playouts[xy];
+		return (double)_wins[index] / (double)_playouts[index];
 	}
 	
 	/**
@@ -254,9 +335,11 @@ public class MonteCarloHashMapResult
 	 * 
 	 * @return the Upper-bound Confidence value of the Tree.
 	 */
-	public double getUCTValue(int xy)
+	private double getUCTValue(int playouts)
 	{
-		return _explorationFactor * Math.sqrt( _logNrPlayouts / (_playouts[xy]+1) );
+		if (playouts>=0 && playouts<TABLE_SIZE)
+			return _explorationFactor * _sqrtLogNrPlayouts * INVERSE_SQRT_TABLE[playouts];
+		return _explorationFactor * _sqrtLogNrPlayouts / Math.sqrt(playouts+1);
 	}
 
 	/**
@@ -268,9 +351,9 @@ public class MonteCarloHashMapResult
 	 * 
 	 * @return Rapid Action Value Estimate
 	 */
-	public double getRAVEValue(int xy)
+	private double getRAVEValue(float virtualPlayouts)
 	{
-		return _explorationFactor * Math.sqrt( _logNrPlayouts / (_virtualPlayouts[xy]+1) );
+		return _explorationFactor * _sqrtLogNrPlayouts / Math.sqrt(virtualPlayouts+1);
 	}
 
 	/**
@@ -290,59 +373,130 @@ public class MonteCarloHashMapResult
 	 */
 	private  double getVirtualWinRatio(int xy)
 	{
-		if (_virtualPlayouts[xy] == 0.0)
+		int index = getIndex(xy);
+		if (index<0 || _virtualPlayouts[index] == 0.0)
 			return 0.0;
 
-		return (double)_virtualWins[xy] / (double)_virtualPlayouts[xy];
+		return (double)_virtualWins[index] / (double)_virtualPlayouts[index];
 	}
 	
 	public int getBestVirtualMove()
 	{
-		_logNrPlayouts = Math.log(_totalPlayouts+1.0f);
+		if (_totalPlayouts<TABLE_SIZE)
+			_logNrPlayouts = LOG_TABLE[_totalPlayouts];
+		else
+			_logNrPlayouts = Math.log(_totalPlayouts+1.0f);
+		_sqrtLogNrPlayouts = Math.sqrt(_logNrPlayouts);
 		_beta = getBeta();
 
-		int bestMove = GoConstant.PASS;
-		double bestResult = computeResult(_bestMove);
-		if (_bestMove!=GoConstant.PASS && bestResult>_bestResult)
+		int bestIndex = -1;
+		double bestResult;
+		if (_bestIndex<0)
+			bestResult = getRAVEValue(0.0f); // What computeResult() gives a move without any statistics.
+		else
 		{
-			assert(bestResult>0.0);
-			usedLastBest = true;
-			// What was previously the best move, most likely still is as it only got better.
-			_bestResult = bestResult;
-			return _bestMove;
+			bestResult = computeResultAt(_bestIndex);
+			if (_moves[_bestIndex]!=GoConstant.PASS && bestResult>_bestResult)
+			{
+				assert(bestResult>0.0);
+				usedLastBest = true;
+				// What was previously the best move, most likely still is as it only got better.
+				_bestResult = bestResult;
+				return _moves[_bestIndex];
+			}
 		}
 		usedLastBest = false;
 
-		for (int i=_emptyPoints.getSize(); --i>=0;)
+		int[] candidates = _candidates;
+		if (_totalPlayouts>=CANDIDATE_THRESHOLD && candidates.length!=0 && ++_nrCandidateVisits<RESCAN_INTERVAL)
 		{
-			int next = _emptyPoints.get(i);
-			double result = computeResult(next);
-			boolean better;
-			if (result>bestResult)
-				better = true;
-			else if (result==bestResult)
-				better = (bestMove==GoConstant.PASS || _virtualPlayouts[next] > _virtualPlayouts[bestMove]);
-			else
-				better = false;
-			
-			if (better)
+			for (int i=candidates.length; --i>=0;)
 			{
-				bestMove = next;
-				bestResult = result;
+				int next = candidates[i];
+				double result = computeResultAt(next);
+				if (isBetterVirtualMove(next, result, bestIndex, bestResult))
+				{
+					bestIndex = next;
+					bestResult = result;
+				}
+			}
+		}
+		else
+		{
+			_nrCandidateVisits = 0;
+			boolean collectCandidates = (_totalPlayouts>=CANDIDATE_THRESHOLD-1);
+			int nrCandidates = 0;
+			double[] candidateResults = null;
+			if (collectCandidates)
+			{
+				candidates = new int[NR_CANDIDATES];
+				candidateResults = new double[NR_CANDIDATES];
 			}
+			for (int next=_nrMoves; --next>=0;)
+			{
+				double result = computeResultAt(next);
+				if (isBetterVirtualMove(next, result, bestIndex, bestResult))
+				{
+					bestIndex = next;
+					bestResult = result;
+				}
+				if (collectCandidates)
+					nrCandidates = addCandidate(candidates, candidateResults, nrCandidates, next, result);
+			}
+			_candidates = collectCandidates? Arrays.copyOf(candidates, nrCandidates) : NO_CANDIDATES;
 		}
-		_bestMove = bestMove;
+		_bestIndex = bestIndex;
 		_bestResult = bestResult;
 		assert(bestResult>=0.0);
-		return bestMove;
+		if (bestIndex<0)
+			return GoConstant.PASS;
+		return _moves[bestIndex];
 	}
 	
+	private boolean isBetterVirtualMove(int index, double result, int bestIndex, double bestResult)
+	{
+		if (result>bestResult)
+			return true;
+		if (result==bestResult)
+			return (bestIndex<0 || _moves[bestIndex]==GoConstant.PASS
+					|| _virtualPlayouts[index]+_virtualLosses.get(index) > _virtualPlayouts[bestIndex]+_virtualLosses.get(bestIndex));
+		return false;
+	}
+
+	/**
+	 * Keep the moves with the highest results in the list of candidates, sorted from high to low.
+	 * 
+	 * @return the number of candidates in the list after adding this one.
+	 */
+	private static int addCandidate(int[] candidates, double[] candidateResults, int nrCandidates, int index, double result)
+	{
+		int i = nrCandidates;
+		if (i>=NR_CANDIDATES)
+		{
+			if (result<=candidateResults[NR_CANDIDATES-1])
+				return NR_CANDIDATES;
+			i = NR_CANDIDATES-1;
+		}
+		else
+			nrCandidates++;
+
+		while (i>0 && candidateResults[i-1]<result)
+		{
+			candidates[i] = candidates[i-1];
+			candidateResults[i] = candidateResults[i-1];
+			i--;
+		}
+		candidates[i] = index;
+		candidateResults[i] = result;
+		return nrCandidates;
+	}
+
 	public int getBestMove()
 	{
 		int bestMove = GoConstant.PASS;
-		for (int i=_emptyPoints.getSize(); --i>=0;)
+		for (int i=_nrMoves; --i>=0;)
 		{
-			int next = _emptyPoints.get(i);
+			int next = _moves[i];
 			if (isBetterResultThan(next, bestMove))
 				bestMove = next;
 		}
@@ -351,105 +505,119 @@ public class MonteCarloHashMapResult
 	
 	public double computeResult(int xy)
 	{
-		double virtualResult = getVirtualWinRatio(xy) + getRAVEValue(xy);
-		if (_playouts[xy]==0)
+		int index = getIndex(xy);
+		if (index<0)
+			return getRAVEValue(0.0f);
+		return computeResultAt(index);
+	}
+	
+	private double computeResultAt(int index)
+	{
+		int virtualLoss = _virtualLosses.get(index);
+		float virtualPlayouts = _virtualPlayouts[index] + virtualLoss;
+		double virtualWinRatio = (virtualPlayouts==0.0f) ? 0.0 : (double)_virtualWins[index] / (double)virtualPlayouts;
+		double virtualResult = virtualWinRatio + getRAVEValue(virtualPlayouts);
+		int playouts = _playouts[index] + virtualLoss;
+		if (playouts==0)
 			return virtualResult;
 
-		double result = getWinRatio(xy)+getUCTValue(xy);
+		double result = (double)_wins[index] / (double)playouts + getUCTValue(playouts);
 		return _beta * virtualResult + (1.0-_beta) * result;
-		//return _beta * (getVirtualWinRatio(xy)+getRAVEValue(xy)) + (1.0-_beta) * (getWinRatio(xy)+getUCTValue(xy));	// Java barfed on this expression, hence the 'spelling out' above.	
-	}
-
-//	private boolean isBetterVirtualMove(int xy1, int xy2)
-//	{
-//		double virtualResult;
-//		double compareResult;
-//		
-////		virtualResult = _results[xy1];
-////		compareResult = _results[xy2];
-////		if (virtualResult<0)
-//			virtualResult = computeResult(xy1);
-////		if (compareResult<0)
-//			compareResult = computeResult(xy2);
-//		
-//		assert virtualResult!=Double.NaN : "Calculation error for the virtual result-value.";
-//		assert compareResult!=Double.NaN : "Calculation error for the virtual compare-value.";
-//
-//		if (virtualResult>compareResult)
-//			return true;
-//		
-//		// Trust the most visited node more. I don't know if it's all that relevant.
-//		// I could probably just as easily argue it should be the other way around.
-//		if (virtualResult==compareResult)
-//			return (xy2==GoConstant.PASS || _playouts[xy1] > _playouts[xy2]);	// TODO: check '<' instead of '>', see which plays better.
-//		
-//		return false;
-//		
-//	}
+	}
 
 	public void increasePlayouts()
 	{
 		_totalPlayouts++;
 	}
 
-//	public void increasePlayouts(int xy)
-//	{
-//		_totalPlayouts++;
-//		_playouts[xy]++;
-//		_virtualPlayouts[xy]++;
-//		
-//		// Computing log() is expensive. I see no need to do it each and every time.
-//		if ((_totalPlayouts&0x7)==0)
-//			_logNrPlayouts = Math.log(_totalPlayouts);
-//		_beta = getBeta();
-//	}
-
 	public void increaseWins(int xy, boolean blackWins)
 	{		
+		int index = getIndex(xy);
+		if (index<0)
+			return;
+		
 		byte color = ColorConstant.opposite(_color);
 		boolean playerWins = (blackWins && color==BLACK) || (!blackWins && color==WHITE);
 		
 		if (playerWins)
 		{
-			_wins[xy]++;
-			_virtualWins[xy]++;
+			_wins[index]++;
+			_virtualWins[index]++;
 		}
-		_playouts[xy]++;
-		_virtualPlayouts[xy]++;
-//		_results[xy] = Double.MIN_VALUE;
+		_playouts[index]++;
+		_virtualPlayouts[index]++;
+	}
+
+	/**
+	 * Count a number of lost playouts for the move at xy while a search-thread is busy
+	 * with a playout after it, so that other threads prefer different moves meanwhile.
+	 */
+	public void addVirtualLoss(int xy, int virtualLoss)
+	{
+		int index = getIndex(xy);
+		if (index<0)
+			return;
+		_virtualLosses.addAndGet(index, virtualLoss);
+	}
+
+	public void removeVirtualLoss(int xy, int virtualLoss)
+	{
+		addVirtualLoss(xy, -virtualLoss);
 	}
 
 	public void increasePlayouts(int xy, int wins, int played)
 	{
-		_wins[xy] += wins;
-		_playouts[xy] += played;
-//		_results[xy] = Double.MIN_VALUE;
+		int index = getIndex(xy);
+		if (index<0)
+			return;
+		_wins[index] += wins;
+		_playouts[index] += played;
 	}
 	
+	/**
+	 * Moves that are not among the moves to try from this position are ignored.
+	 */
 	public void increaseVirtualPlayouts(int xy, double win_weight, double weight)
 	{
-		_virtualWins[xy] += win_weight;
-		_virtualPlayouts[xy] += weight;
-//		_results[xy] = Double.MIN_VALUE;
+		int index = getIndex(xy);
+		if (index>=0)
+			increaseVirtualPlayoutsAt(index, win_weight, weight);
+	}
+	
+	/**
+	 * Same as increaseVirtualPlayouts() for the move at an index between 0 and getNrMoves().
+	 */
+	public void increaseVirtualPlayoutsAt(int index, double win_weight, double weight)
+	{
+		_virtualWins[index] += win_weight;
+		_virtualPlayouts[index] += weight;
 	}
 	
 	public void forbid(int xy)
 	{
-		_wins[xy] = 0;
-		_virtualWins[xy] = 0;
-		_playouts[xy] =FORBIDDEN;
-		_virtualPlayouts[xy] = FORBIDDEN;
-//		_results[xy] = Double.MIN_VALUE;
+		int index = getIndex(xy);
+		if (index<0)
+			return;
+		_wins[index] = 0;
+		_virtualWins[index] = 0;
+		_playouts[index] =FORBIDDEN;
+		_virtualPlayouts[index] = FORBIDDEN;
 	}
 	
 	public double getVirtualWins(int xy)
 	{
-		return _virtualWins[xy];
+		int index = getIndex(xy);
+		if (index<0)
+			return 0.0;
+		return _virtualWins[index];
 	}
 
 	public double getVirtualPlayouts(int xy)
 	{
-		return _virtualPlayouts[xy];
+		int index = getIndex(xy);
+		if (index<0)
+			return 0.0;
+		return _virtualPlayouts[index];
 	}
 
 	public String toString()
@@ -465,13 +633,13 @@ public class MonteCarloHashMapResult
 			for (int col=1; col<=_boardSize; col++)
 			{
 				int xy = GoArray.toXY(col,row);
-				if (_playouts[xy]!=0)
-					out.append(Double.toString(_wins[xy]/_playouts[xy]));
+				if (getPlayouts(xy)!=0)
+					out.append(Double.toString(getWins(xy)/getPlayouts(xy)));
 				else
 				{
-					out.append(Integer.toString(_wins[xy]));
+					out.append(Integer.toString(getWins(xy)));
 					out.append("/");
-					out.append(Integer.toString(_playouts[xy]));
+					out.append(Integer.toString(getPlayouts(xy)));
 				}
 				out.append("\t");
 			}
@@ -483,13 +651,13 @@ public class MonteCarloHashMapResult
 			for (int col=1; col<=_boardSize; col++)
 			{
 				int xy = GoArray.toXY(col,row);
-				if (_virtualPlayouts[xy]!=0.0)
-					out.append(Double.toString((double)_virtualWins[xy]/(double)_virtualPlayouts[xy]));
+				if (getVirtualPlayouts(xy)!=0.0)
+					out.append(Double.toString(getVirtualWins(xy)/getVirtualPlayouts(xy)));
 				else
 				{
-					out.append(Double.toString(_virtualWins[xy]));
+					out.append(Double.toString(getVirtualWins(xy)));
 					out.append("/");
-					out.append(Double.toString(_virtualPlayouts[xy]));
+					out.append(Double.toString(getVirtualPlayouts(xy)));
 				}
 				out.append("\t");
 			}
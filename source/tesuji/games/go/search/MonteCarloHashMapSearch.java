@@ -13,14 +13,16 @@ import java.beans.PropertyChangeListener;
 import javax.swing.JFrame;
 
 import org.apache.log4j.Logger;
-import org.cliffc.high_scale_lib.NonBlockingHashMapLong;
 
 import tesuji.core.util.ArrayStack;
 import tesuji.games.general.GlobalParameters;
 import tesuji.games.general.TreeNode;
-import tesuji.games.general.search.Search;
+import tesuji.games.general.search.ByoYomiTimeManager;
+import tesuji.games.general.search.PonderingSearch;
 import tesuji.games.general.search.SearchProperties;
 import tesuji.games.general.search.SearchResult;
+import tesuji.games.general.search.TimeManager;
+import tesuji.games.general.search.TimedSearch;
 import tesuji.games.go.common.GoConstant;
 import tesuji.games.go.common.GoMove;
 import tesuji.games.go.common.GoMoveFactory;
@@ -34,24 +36,68 @@ import tesuji.games.go.monte_carlo.MonteCarloPluginAdministration;
 import tesuji.games.go.pattern.util.PatternUtil;
 import tesuji.games.go.util.GoArray;
 import tesuji.games.go.util.IntStack;
-import tesuji.games.go.util.PointSet;
 import tesuji.games.util.Console;
 import tesuji.games.util.Point;
 
 public class MonteCarloHashMapSearch
-	implements Search<GoMove>, PropertyChangeListener
+	implements PonderingSearch<GoMove>, TimedSearch<GoMove>, PropertyChangeListener
 {
 	private static Logger _logger = Logger.getLogger(MonteCarloHashMapSearch.class);
 
+	/**
+	 * The default number of megabytes used by the results in the transposition-table.
+	 */
+	private static final int DEFAULT_TABLE_SIZE = 128;
+
 	protected MonteCarloAdministration<GoMove> _monteCarloAdministration;
 //	private HashMap<Integer, MonteCarloHashMapResult> _hashMap = new HashMap<Integer, MonteCarloHashMapResult>();
 //	private ConcurrentHashMap<Integer, MonteCarloHashMapResult> _hashMap = new ConcurrentHashMap<Integer, MonteCarloHashMapResult>();
-	private NonBlockingHashMapLong<MonteCarloHashMapResult> _hashMap = new NonBlockingHashMapLong<MonteCarloHashMapResult>(false);
+//	private NonBlockingHashMapLong<MonteCarloHashMapResult> _hashMap = new NonBlockingHashMapLong<MonteCarloHashMapResult>(false);
+	private TranspositionTable _transpositionTable = new TranspositionTable(DEFAULT_TABLE_SIZE);
+	private int _transpositionTableSize = DEFAULT_TABLE_SIZE;
 	private MonteCarloHashMapResult _rootResult;
 	private int _nrPlayouts;
 	private int _nrSimulationsBeforeExpansion = 1;
 	private int _nrSimulatedMoves = 0;
 	private boolean _useAMAF = true;
+	private int _virtualLoss;
+	/**
+	 * The seed the random streams of the administration and the search-threads are derived from,
+	 * zero when they're seeded by the clock.
+	 */
+	private int _randomSeed;
+	
+	/**
+	 * The threads to search in and the search-processes that run in them. These are
+	 * kept between moves, so the administrations of the processes get created only once.
+	 */
+	private SearchThreads _searchThreads = new SearchThreads(getClass().getSimpleName())
+	{
+		@Override
+		protected Process createProcess()
+		{
+			return new SearchProcess((MonteCarloPluginAdministration)_monteCarloAdministration);
+		}
+	};
+	/**
+	 * Set when the time for the search ran out, after which the search-processes
+	 * stop as soon as the required number of playouts have been performed.
+	 */
+	private volatile boolean _timeUp;
+
+	/**
+	 * Decides how long to search when playing with a clock. Without time-settings
+	 * the time per move and the node-limit are used instead.
+	 */
+	private TimeManager _timeManager = new ByoYomiTimeManager();
+	/**
+	 * Set while the time-manager decides when the search stops, instead of the search-processes themselves.
+	 */
+	private volatile boolean _isTimeManaged;
+	/**
+	 * How often in milliseconds the time-manager is asked whether the search can stop.
+	 */
+	private static final int POLL_INTERVAL = 50;
 
 	protected int _secondsPerMove;
 	protected int _nrSets;
@@ -92,7 +138,7 @@ public class MonteCarloHashMapSearch
 	
 	public void setMonteCarloAdministration(MonteCarloAdministration<GoMove> administration)
 	{
-		controller = new MCBoardController((MonteCarloPluginAdministration)administration, getHashMap());
+		controller = new MCBoardController((MonteCarloPluginAdministration)administration, getTranspositionTable());
 		display = new MCBoardDisplay(controller);
 		dataWindow = new JFrame();					
 		java.awt.Point p = Console.getSingleton().getDataPanel().getLocation();
@@ -101,7 +147,12 @@ public class MonteCarloHashMapSearch
 		dataWindow.setSize(300, 300);
 		dataWindow.getContentPane().add(display);
 
+		stopPondering();
 		_monteCarloAdministration = administration;
+		_searchThreads.discardProcesses();
+		_searchThreads.shutdown();
+		if (_randomSeed!=0)
+			_monteCarloAdministration.setRandomSeed(_randomSeed);
 		initRoot();
 	}
 	
@@ -118,9 +169,29 @@ public class MonteCarloHashMapSearch
     	return (MonteCarloPluginAdministration) _monteCarloAdministration;
     }
     
-    public NonBlockingHashMapLong<MonteCarloHashMapResult> getHashMap()
+    public TranspositionTable getTranspositionTable()
+    {
+    	return _transpositionTable;
+    }
+    
+    /**
+     * @return the size of the transposition-table in megabytes.
+     */
+    public int getTranspositionTableSize()
     {
-    	return _hashMap;
+    	return _transpositionTableSize;
+    }
+    
+    /**
+     * @param megabytes - the roughly maximum amount of memory used by the results in the transposition-table.
+     */
+    public void setTranspositionTableSize(int megabytes)
+    {
+    	stopPondering();
+    	_transpositionTableSize = megabytes;
+    	_transpositionTable.clear();
+    	_transpositionTable = new TranspositionTable(megabytes);
+    	initRoot();
     }
     
     public MCBook getBook()
@@ -138,20 +209,14 @@ public class MonteCarloHashMapSearch
 		if (_monteCarloAdministration!=null)
 		{
 			_nrSets = 0;
-			int age = _monteCarloAdministration.getMoveStack().getSize();
-			for (MonteCarloHashMapResult r : _hashMap.values())
-			{
-				if (r.getAge()<age)
-				{
-					_hashMap.remove(r.getChecksum());
-					r.recycle();
-				}
-			}
-			//_hashMap.clear();
+			// The results from before the current move are the first to be replaced from now on.
+			_transpositionTable.setGeneration(_monteCarloAdministration.getMoveStack().getSize());
 			
 			long checksum = _monteCarloAdministration.getPositionalChecksum();
-			_rootResult = _hashMap.get(checksum);
-			if (_rootResult==null)
+			_rootResult = _transpositionTable.get(checksum);
+			if (_rootResult!=null)
+				_rootResult.setAge(_transpositionTable.getGeneration());
+			else
 			{
 				_rootResult = SearchResultFactory.createMonteCarloHashMapResult();
 				_rootResult.setPointSet((MonteCarloPluginAdministration)_monteCarloAdministration);
@@ -160,7 +225,7 @@ public class MonteCarloHashMapSearch
 				_rootResult.setAge(_monteCarloAdministration.getMoveStack().getSize());
 				_rootResult.setChecksum(checksum);
 	
-				_hashMap.put(checksum,_rootResult);
+				_rootResult = _transpositionTable.putIfAbsent(_rootResult);
 			}
 			
 			if (_book!=null)
@@ -196,6 +261,8 @@ public class MonteCarloHashMapSearch
 		setSecondsPerMove(_searchProperties.getIntProperty(SearchProperties.TIME_PER_MOVE));
 		setNrProcessors(_searchProperties.getIntProperty(SearchProperties.NR_PROCESSORS));
 		setMinimumNrNodes(_searchProperties.getIntProperty(SearchProperties.NR_NODES));
+		setVirtualLoss(_searchProperties.getIntProperty(SearchProperties.VIRTUAL_LOSS));
+		setRandomSeed(_searchProperties.getIntProperty(SearchProperties.RANDOM_SEED));
 	}
 
 //	@Override
@@ -228,10 +295,6 @@ public class MonteCarloHashMapSearch
 		if (minimum>0 && minimum!=_minimumNrNodes)
 		{
 			_minimumNrNodes = minimum;
-//			SearchResultFactory.ensureMonteCarloHashMapResultCapacity(_minimumNrNodes*2);
-//			_hashMap = new ConcurrentHashMap<Integer, MonteCarloHashMapResult>(_minimumNrNodes*2);
-			_hashMap = new NonBlockingHashMapLong<MonteCarloHashMapResult>(_minimumNrNodes*2, false);
-//			_hashMap = new HashMap<Integer,MonteCarloHashMapResult>(_minimumNrNodes*2);
 			_searchProperties.setIntProperty(SearchProperties.NR_NODES,minimum);
 		}
     }
@@ -249,7 +312,7 @@ public class MonteCarloHashMapSearch
     {
 		if (GlobalParameters.isTestVersion())
 		{
-			controller.init((MonteCarloPluginAdministration)_monteCarloAdministration, _hashMap);
+			controller.init((MonteCarloPluginAdministration)_monteCarloAdministration, _transpositionTable);
 			display.update();
 			dataWindow.setVisible(true);
 		}
@@ -258,6 +321,8 @@ public class MonteCarloHashMapSearch
 //	@Override
     public GoMove doSearch(byte startColor) throws Exception
     {
+		stopPondering();
+
 		long time0 = System.currentTimeMillis();
 
 		assert _monteCarloAdministration.isConsistent() : "Inconsistent Monte-Carlo administration at the start of the search.";
@@ -275,47 +340,45 @@ public class MonteCarloHashMapSearch
 		updateStats();
 
 		long time1 = System.currentTimeMillis();
-		long time2;
 		long timeLimit = calculateTimeLimit();
 		if (isOptimizeNodeLimit())
 			_nodeLimit = calculateNodeLimit();
 		else
 			_nodeLimit = _minimumNrNodes;
 		
-		// Create a thread for each available processor and start a search in it.
-		Thread[] threads = new Thread[_nrThreads];
-		Runnable[] searchProcesses = new Runnable[_nrThreads];
-		for (int t=0; t<_nrThreads; t++)
+		_timeUp = false;
+		_isTimeManaged = (_timeManager!=null && _timeManager.isTimeLimited());
+		if (_isTimeManaged)
+			_timeManager.startSearch(startColor, _monteCarloAdministration.getEmptyPoints().getSize());
+		_searchThreads.start(startColor, _nrThreads, _monteCarloAdministration.getBoardSize());
+
+		if (_isTimeManaged)
 		{
-			searchProcesses[t] = new SearchProcess(startColor,(MonteCarloPluginAdministration)_monteCarloAdministration);
-			threads[t] = new Thread(searchProcesses[t]);
-			threads[t].start();
+			// With a clock the time-manager decides, so the node-limit is not waited for.
+			if (!waitForTimeManager(time0))
+			{
+				_timeUp = true;
+				_searchThreads.stop();
+				_searchThreads.join();
+			}
+			_timeManager.endSearch(System.currentTimeMillis()-time0);
+			_isTimeManaged = false;
 		}
-
-		boolean active = true;
-
-		// Now loop for the required amount of time or until
-		// the required number of playouts have been performed.
+		// Now wait for the required amount of time. After that the processes keep
+		// going until the required number of playouts have been performed.
 		// It also stops when no processor remains active, although
 		// a search-thread stopping by itself is most likely a bug.
-		do
+		else if (!_searchThreads.waitForCompletion(time1+timeLimit))
 		{
-			Thread.sleep(10);
-			active = false;
-			for (int t=0; t<_nrThreads; t++)
-				if (threads[t].isAlive())
-					active = true;
-			time2 = System.currentTimeMillis();
-		}
-		while (active && (_nrPlayouts<_nodeLimit || (time2-time1)<timeLimit));
-		
-		// Tell all the threads to stop
-		for (int t=0; t<_nrThreads; t++)
-			((SearchProcess)searchProcesses[t]).stop();
+			_timeUp = true;
+			
+			// Tell all the threads to stop if there's no need to wait for more playouts.
+			if (_nrPlayouts>=_nodeLimit)
+				_searchThreads.stop();
 
-		// Then wait for them to terminate.
-		for (int t=0; t<_nrThreads; t++)
-				threads[t].join();
+			// Then wait for them to terminate.
+			_searchThreads.join();
+		}
 				
 		_totalNrPlayouts += _nrPlayouts;
 		_averagePlayouts = (int) (_totalNrPlayouts/_nrGeneratedMoves);
@@ -333,7 +396,7 @@ public class MonteCarloHashMapSearch
 		updateStats();
 
 /*		JFrame window = new JFrame();					
-		MCBoardController controller = new MCBoardController(getAdministration(), getHashMap());
+		MCBoardController controller = new MCBoardController(getAdministration(), getTranspositionTable());
 		MCBoardDisplay display = new MCBoardDisplay(controller);
 		java.awt.Point p = Console.getSingleton().getDataPanel().getLocation();
 		Dimension d = Console.getSingleton().getDataPanel().getSize();
@@ -416,13 +479,13 @@ public class MonteCarloHashMapSearch
 				entry = new MCJosekiEntry();
 				entry.setChecksum(_rootResult.getChecksum());
 				entry.setTimestamp(System.currentTimeMillis());
-				int nrPoints = _rootResult.getEmptyPoints().getSize();
+				int nrPoints = _rootResult.getNrMoves();
 				entry.xy = new int[nrPoints];
 				entry.wins = new int[nrPoints];
 				entry.played = new int[nrPoints];
 				for (int i=0; i<nrPoints; i++)
 				{
-					int entryXY = _rootResult.getEmptyPoints().get(i);
+					int entryXY = _rootResult.getMove(i);
 					entry.xy[i] = entryXY;
 				}
 				for (int i=0; i<entry.xy.length; i++)
@@ -450,6 +513,49 @@ public class MonteCarloHashMapSearch
 		}    	
     }
     
+	/**
+	 * Wait while the search-processes are running, asking the time-manager at regular
+	 * intervals whether the search can stop, given how the moves at the root compare.
+	 * 
+	 * @param startTime
+	 * 
+	 * @return whether the search-processes finished by themselves.
+	 * 
+	 * @throws InterruptedException
+	 */
+	private boolean waitForTimeManager(long startTime)
+		throws InterruptedException
+	{
+		long deadline = startTime + _timeManager.getMaximumTime();
+		while (true)
+		{
+			long time = System.currentTimeMillis();
+			if (time>=deadline)
+				return false;
+			if (_searchThreads.waitForCompletion(Math.min(deadline, time+POLL_INTERVAL)))
+				return true;
+
+			int bestPlayouts = 0;
+			int secondBestPlayouts = 0;
+			MonteCarloHashMapResult root = _rootResult;
+			for (int i=root.getNrMoves(); --i>=0;)
+			{
+				int playouts = root.getPlayouts(root.getMove(i));
+				if (playouts>=MonteCarloHashMapResult.FORBIDDEN)
+					continue;
+				if (playouts>bestPlayouts)
+				{
+					secondBestPlayouts = bestPlayouts;
+					bestPlayouts = playouts;
+				}
+				else if (playouts>secondBestPlayouts)
+					secondBestPlayouts = playouts;
+			}
+			if (_timeManager.isDone(System.currentTimeMillis()-startTime, _nrPlayouts, bestPlayouts, secondBestPlayouts))
+				return false;
+		}
+	}
+	
 	protected long calculateTimeLimit()
 	{
 		if (_secondsPerMove==0)
@@ -508,6 +614,7 @@ public class MonteCarloHashMapSearch
 //	@Override
     public void playMove(GoMove move)
     {
+		stopPondering();
 		_monteCarloAdministration.playMove(move);
 		initRoot();   
     }
@@ -522,10 +629,13 @@ public class MonteCarloHashMapSearch
 //	@Override
     public void clear()
     {
+		stopPondering();
 		_monteCarloAdministration.clear();    
-		for (MonteCarloHashMapResult r : _hashMap.values())
-				r.recycle();
-		_hashMap.clear();
+		_transpositionTable.clear();
+		if (_timeManager!=null)
+			_timeManager.clear();
+		// A search gets cleared between games and before it's discarded, so let go of the threads until the next search.
+		_searchThreads.shutdown();
 	}
     
 //	@Override
@@ -542,15 +652,50 @@ public class MonteCarloHashMapSearch
 	    return null;
     }
 
+	/*
+	 * (non-Javadoc)
+	 * @see tesuji.games.general.search.PonderingSearch#startPondering(byte)
+	 */
+	public void startPondering(byte startColor)
+	{
+		stopPondering();
+
+		_monteCarloAdministration.setColorToMove(startColor);
+		_nrPlayouts = 0;
+		_nodeLimit = SearchThreads.MAX_PONDER_PLAYOUTS;
+		// With the time up from the start, the processes stop by themselves at the node-limit.
+		_timeUp = true;
+		_searchThreads.startPondering(startColor, _nrThreads, _monteCarloAdministration.getBoardSize());
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see tesuji.games.general.search.PonderingSearch#stopPondering()
+	 */
+	public void stopPondering()
+	{
+		if (_searchThreads.stopPondering())
+			_logger.info("Pondered "+_nrPlayouts+" playouts");
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see tesuji.games.general.search.PonderingSearch#isPondering()
+	 */
+	public boolean isPondering()
+	{
+		return _searchThreads.isPondering();
+	}
+	
 	/**
 	 *	This is an inner class that implements Runnable so we can start
 	 *	as many SearchProcess instances as we have processors available.
 	 */
     class SearchProcess
-    	implements Runnable
+    	implements SearchThreads.Process
     {
     	byte _startColor;
-    	private boolean running;
+    	private volatile boolean running;
 		private MonteCarloPluginAdministration _newAdministration;
 		private MonteCarloPluginAdministration _initAdministration;
 		private MonteCarloPluginAdministration _searchAdministration;
@@ -559,9 +704,8 @@ public class MonteCarloHashMapSearch
 		private IntStack _moveStack;
 		private ArrayStack<MonteCarloHashMapResult> _resultStack;
     	
-    	public SearchProcess(byte startColor, MonteCarloPluginAdministration admin)
+    	public SearchProcess(MonteCarloPluginAdministration admin)
     	{
-    		_startColor = startColor;
     		running = false;
     		_initAdministration = (MonteCarloPluginAdministration)admin.createClone();
     		_searchAdministration = (MonteCarloPluginAdministration) admin.createClone();
@@ -586,13 +730,11 @@ public class MonteCarloHashMapSearch
     		_searchAdministration.copyDataFrom(_initAdministration);
     		_moveStack.clear();
     		_resultStack.clear();
-    		MonteCarloHashMapResult rootNode = _hashMap.get(_searchAdministration.getPositionalChecksum());
-    		_resultStack.push(rootNode);
+    		_resultStack.push(_rootResult);
     	}
     	
     	public void run()
     	{
-    		running = true;
     		do
     		{
     			reset();
@@ -604,8 +746,12 @@ public class MonteCarloHashMapSearch
 				if (node != null)
 				{
 					int bestXY = node.getBestVirtualMove();
+					if (_virtualLoss!=0)
+						node.addVirtualLoss(bestXY, _virtualLoss);
 					_searchAdministration.playMove(bestXY);
 					boolean blackWins = _searchAdministration.playout();
+					if (_virtualLoss!=0)
+						node.removeVirtualLoss(bestXY, _virtualLoss);
 					node.increaseWins(bestXY, blackWins);
 					setNrSimulatedMoves(getNrSimulatedMoves() + _searchAdministration.getNrSimulatedMoves());
 			    	adjustTreeValue(blackWins);
@@ -638,13 +784,14 @@ public class MonteCarloHashMapSearch
 					    	color = opposite(playoutNode.getColor());
 							boolean playerWins = (blackWins && color==BLACK) || (!blackWins && color==WHITE);
 							double score = playerWins ? MonteCarloTreeSearchResult.MAX_SCORE : MonteCarloTreeSearchResult.MIN_SCORE;
-							PointSet points = playoutNode.getEmptyPoints();
-							for (int p=0; p<points.getSize(); p++)
+							for (int m=playoutNode.getNrMoves(); --m>=0;)
 							{
-								int xy = points.get(p);
-								double weightXY = _weightMap[xy];
+								int xy = playoutNode.getMove(m);
 								if (_colorMap[xy]==color)
-									playoutNode.increaseVirtualPlayouts(xy,weightXY*score,weightXY);
+								{
+									double weightXY = _weightMap[xy];
+									playoutNode.increaseVirtualPlayoutsAt(m,weightXY*score,weightXY);
+								}
 							}
 						}
 			    	}
@@ -653,6 +800,17 @@ public class MonteCarloHashMapSearch
     		while (running && !reachedStopCondition());
     	}
     	
+    	/**
+    	 * Get ready for a new search. This gets called before the process is started,
+    	 * so a call to stop() can't get lost.
+    	 */
+    	public void prepare(byte startColor)
+    	{
+    		_startColor = startColor;
+    		running = true;
+    		updateAdministration((MonteCarloPluginAdministration)_monteCarloAdministration);
+    	}
+    	
     	public void stop()
     	{
     		running = false;
@@ -660,7 +818,10 @@ public class MonteCarloHashMapSearch
     	
     	private boolean reachedStopCondition()
     	{
-    		if (_nrPlayouts>=_nodeLimit && _secondsPerMove==0)
+    		if (_isTimeManaged)
+    			return false;
+    		
+    		if (_nrPlayouts>=_nodeLimit && (_secondsPerMove==0 || _timeUp))
     			return true;
     		    		
     		return false;
@@ -668,9 +829,7 @@ public class MonteCarloHashMapSearch
     	
     	private MonteCarloHashMapResult getNodeToExpand()
     	{
-    		MonteCarloHashMapResult node = _hashMap.get(_searchAdministration.getPositionalChecksum());
-    		if (node==null)
-    			throw new IllegalStateException();
+    		MonteCarloHashMapResult node = _rootResult;
     		while (_searchAdministration.getNrPasses()<2)
     		{
     			node.increasePlayouts();
@@ -689,10 +848,13 @@ public class MonteCarloHashMapSearch
 	   			{
 	   				node.forbid(xy);
 	   				_moveStack.pop();
+	   				removeVirtualLoss();
 	   				return null;
 	   			}
+	   			if (_virtualLoss!=0)
+	   				node.addVirtualLoss(xy, _virtualLoss);
 
-	    		MonteCarloHashMapResult bestNode = _hashMap.get(checksum);
+	    		MonteCarloHashMapResult bestNode = _transpositionTable.get(checksum);
 	   			if (bestNode==null)
 	   			{
 	   				bestNode = SearchResultFactory.createMonteCarloHashMapResult();
@@ -724,8 +886,11 @@ public class MonteCarloHashMapSearch
 	   					}
 	   				}
 	   				
+	   				MonteCarloHashMapResult newNode = bestNode;
+	   				bestNode = _transpositionTable.putIfAbsent(newNode);
+	   				if (bestNode!=newNode)
+	   					newNode.recycle(); // Another thread added the same position first.
 		    		_resultStack.push(bestNode);
-		    		_hashMap.put(checksum, bestNode);
 	   				return bestNode;
 	   			}
 	    		_resultStack.push(bestNode);
@@ -739,6 +904,7 @@ public class MonteCarloHashMapSearch
     	
     	public void adjustTreeValue(boolean blackWins)
     	{
+    		removeVirtualLoss();
     		for (int i=0; i<_moveStack.getSize(); i++)
     		{
     			int xy = _moveStack.peek(i);
@@ -746,6 +912,22 @@ public class MonteCarloHashMapSearch
    				node.increaseWins(xy,blackWins);
     		}
     	}
+    	
+    	/**
+    	 * Remove the virtual loss added to the moves on the path from the root.
+    	 */
+    	private void removeVirtualLoss()
+    	{
+    		if (_virtualLoss==0)
+    			return;
+    		
+    		for (int i=0; i<_moveStack.getSize(); i++)
+    		{
+    			int xy = _moveStack.peek(i);
+    			MonteCarloHashMapResult node = _resultStack.peek(i+1);
+   				node.removeVirtualLoss(xy,_virtualLoss);
+    		}
+    	}
     }
     
 
@@ -794,6 +976,73 @@ public class MonteCarloHashMapSearch
 		_useAMAF = useAMAF;
 	}
 
+	public int getVirtualLoss()
+	{
+		return _virtualLoss;
+	}
+
+	/**
+	 * @param virtualLoss - the number of lost playouts temporarily added to a move while
+	 * a search-thread is busy with a playout after it. Zero switches it off.
+	 */
+	public void setVirtualLoss(int virtualLoss)
+	{
+		_virtualLoss = virtualLoss;
+		if (_virtualLoss<0)
+			_virtualLoss = 0;
+		_searchProperties.setIntProperty(SearchProperties.VIRTUAL_LOSS,_virtualLoss);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see tesuji.games.general.search.TimedSearch#getTimeManager()
+	 */
+	public TimeManager getTimeManager()
+	{
+		return _timeManager;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see tesuji.games.general.search.TimedSearch#setTimeManager(tesuji.games.general.search.TimeManager)
+	 */
+	public void setTimeManager(TimeManager timeManager)
+	{
+		_timeManager = timeManager;
+	}
+
+	public int getRandomSeed()
+	{
+		return _randomSeed;
+	}
+
+	/**
+	 * Seed the administration, from which the administrations of the search-threads are cloned
+	 * in turn. So with a single thread and a fixed number of playouts the search is the same
+	 * in every run. The search-processes are created anew so that they get their seeds from it,
+	 * and the results so far are cleared as they depend on the random numbers used before.
+	 * 
+	 * @param seed - zero, or not set, leaves the random streams seeded by the clock.
+	 */
+	public void setRandomSeed(int seed)
+	{
+		if (seed==Integer.MIN_VALUE)
+			seed = 0;
+		if (seed!=_randomSeed)
+		{
+			_randomSeed = seed;
+			if (_randomSeed!=0 && _monteCarloAdministration!=null)
+			{
+				stopPondering();
+				_monteCarloAdministration.setRandomSeed(_randomSeed);
+				_searchThreads.discardProcesses();
+				_transpositionTable.clear();
+				initRoot();
+			}
+		}
+		_searchProperties.setIntProperty(SearchProperties.RANDOM_SEED,_randomSeed);
+	}
+
 
 	public boolean isOptimizeNodeLimit()
 	{
@@ -28,6 +28,7 @@ package tesuji.games.go.search;
 
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 import org.apache.log4j.Logger;
 
@@ -40,7 +41,7 @@ import tesuji.games.general.MoveIterator;
 import tesuji.games.general.TreeNode;
 import tesuji.games.general.TreeNodeFactory;
 import tesuji.games.general.provider.DataProviderList;
-import tesuji.games.general.search.Search;
+import tesuji.games.general.search.PonderingSearch;
 import tesuji.games.general.search.SearchProperties;
 
 import tesuji.games.go.monte_carlo.MCTacticsAdministration;
@@ -59,7 +60,7 @@ import static tesuji.games.go.util.GoArray.createBytes;
  * Implementation of a simple UCT / Monte-Carlo search algorithm. 
  */
 public class MonteCarloTreeSearch<MoveType extends Move>
-	implements Search<MoveType>, PropertyChangeListener
+	implements PonderingSearch<MoveType>, PropertyChangeListener
 {
 	private static final int MAX_DUPLICATE_RUNS = 1000;
 
@@ -72,7 +73,10 @@ public class MonteCarloTreeSearch<MoveType extends Move>
 	protected MonteCarloAdministration<MoveType> _monteCarloAdministration;
 	protected int _secondsPerMove;
 	protected TreeNode<MonteCarloTreeSearchResult<MoveType>> _rootNode;
-	protected int _nrPlayouts;
+	protected volatile int _nrPlayouts;
+	@SuppressWarnings("rawtypes")
+	private static final AtomicIntegerFieldUpdater<MonteCarloTreeSearch> _nrPlayoutsUpdater =
+		AtomicIntegerFieldUpdater.newUpdater(MonteCarloTreeSearch.class, "_nrPlayouts");
 	protected int _nrSets;
 	protected double _lastScore = 0.0;
 	protected int _nrThreads;
@@ -83,9 +87,38 @@ public class MonteCarloTreeSearch<MoveType extends Move>
 	
 	protected int _nrSimulationsBeforeExpansion = 1;
 	protected boolean _useAMAF = false;
+	protected int _virtualLoss;
+	/**
+	 * The number of trees searched in parallel whose root statistics get merged into this one.
+	 */
+	protected int _nrMergedTrees = 1;
+	
+	/**
+	 * The seed the random streams of the administration and the search-threads are derived from,
+	 * zero when they're seeded by the clock.
+	 */
+	private int _randomSeed;
 	
 	private int _nrSimulatedMoves;
 	
+	/**
+	 * The threads to search in and the search-processes that run in them. These are
+	 * kept between moves, so the administrations of the processes get created only once.
+	 */
+	private SearchThreads _searchThreads = new SearchThreads(getClass().getSimpleName())
+	{
+		@Override
+		protected Process createProcess()
+		{
+			return new SearchProcess();
+		}
+	};
+	/**
+	 * Set when the time for the search ran out, after which the search-processes
+	 * stop as soon as the required number of playouts have been performed.
+	 */
+	private volatile boolean _timeUp;
+	
 	private static long _nrGeneratedMoves;
 	private static long _totalNrPlayouts;
 	private static int _averagePlayouts;
@@ -107,7 +140,12 @@ public class MonteCarloTreeSearch<MoveType extends Move>
 	
 	public void setMonteCarloAdministration(MonteCarloAdministration<MoveType> administration)
 	{
+		stopPondering();
 		_monteCarloAdministration = administration;
+		_searchThreads.discardProcesses();
+		_searchThreads.shutdown();
+		if (_randomSeed!=0)
+			_monteCarloAdministration.setRandomSeed(_randomSeed);
 		initRoot();
 		
 		GoArray.clear(_ownershipArray);
@@ -139,6 +177,8 @@ public class MonteCarloTreeSearch<MoveType extends Move>
     public MoveType doSearch(byte startColor)
 		throws Exception
 	{		
+		stopPondering();
+
 		long time0 = System.currentTimeMillis();
 
 		assert _monteCarloAdministration.isConsistent() : "Inconsistent Monte-Carlo administration at the start of the search.";
@@ -153,47 +193,30 @@ public class MonteCarloTreeSearch<MoveType extends Move>
 		_nrGeneratedMoves++;
 
 		long time1 = System.currentTimeMillis();
-		long time2;
 		long timeLimit = calculateTimeLimit();
 		if (isOptimizeNodeLimit())
 			_nodeLimit = calculateNodeLimit();
 		else
 			_nodeLimit = _minimumNrNodes;
 		
-		// Create a thread for each available processor and start a search in it.
-		Thread[] threads = new Thread[_nrThreads];
-		Runnable[] searchProcesses = new Runnable[_nrThreads];
-		for (int t=0; t<_nrThreads; t++)
-		{
-			searchProcesses[t] = new SearchProcess(startColor);
-			threads[t] = new Thread(searchProcesses[t]);
-			threads[t].start();
-		}
-
-		boolean active = true;
+		_timeUp = false;
+		_searchThreads.start(startColor, _nrThreads, _monteCarloAdministration.getBoardSize());
 
-		// Now loop for the required amount of time or until
-		// the required number of playouts have been performed.
+		// Now wait for the required amount of time. After that the processes keep
+		// going until the required number of playouts have been performed.
 		// It also stops when no processor remains active, although
 		// a search-thread stopping by itself is most likely a bug.
-		do
+		if (!_searchThreads.waitForCompletion(time1+timeLimit))
 		{
-			Thread.sleep(10);
-			active = false;
-			for (int t=0; t<_nrThreads; t++)
-				if (threads[t].isAlive())
-					active = true;
-			time2 = System.currentTimeMillis();
-		}
-		while (active && (_nrPlayouts<_nodeLimit || (time2-time1)<timeLimit));
-		
-		// Tell all the threads to stop
-		for (int t=0; t<_nrThreads; t++)
-			((SearchProcess)searchProcesses[t]).stop();
+			_timeUp = true;
+			
+			// Tell all the threads to stop if there's no need to wait for more playouts.
+			if (_nrPlayouts>=_nodeLimit)
+				_searchThreads.stop();
 
-		// Then wait for them to terminate.
-		for (int t=0; t<_nrThreads; t++)
-				threads[t].join();
+			// Then wait for them to terminate.
+			_searchThreads.join();
+		}
 				
 		_totalNrPlayouts += _nrPlayouts;
 		_averagePlayouts = (int) (_totalNrPlayouts/_nrGeneratedMoves);
@@ -250,10 +273,10 @@ public class MonteCarloTreeSearch<MoveType extends Move>
 		for (TreeNode<MonteCarloTreeSearchResult<MoveType>> r : _rootNode.getChildren())
 		{
 			int xy = ((GoMove)r.getContent().getMove()).getXY();
-			wins[xy] = r.getContent()._nrWins;
-			playouts[xy] = r.getContent()._nrPlayouts;
-			virtualWins[xy] = (int)r.getContent()._nrVirtualWins;
-			virtualPlayouts[xy] = (int)r.getContent()._nrVirtualPlayouts;
+			wins[xy] = r.getContent().getNrWins();
+			playouts[xy] = r.getContent().getNrPlayouts();
+			virtualWins[xy] = (int)r.getContent().getNrVirtualWins();
+			virtualPlayouts[xy] = (int)r.getContent().getNrVirtualPlayouts();
 			vresults[xy] = r.getContent().getVirtualWinRatio();
 			results[xy] = r.getContent().getWinRatio();
 		}
@@ -379,10 +402,13 @@ public class MonteCarloTreeSearch<MoveType extends Move>
 	 */
 	protected TreeNode<MonteCarloTreeSearchResult<MoveType>> getNodeToExpand(TreeNode<MonteCarloTreeSearchResult<MoveType>> node, MonteCarloAdministration<MoveType> searchAdministration)
 	{
-		if (node.getChildCount()==0 || node.getContent().getNrPlayouts()<_nrSimulationsBeforeExpansion)
+		if (!node.getContent().isExpanded() || node.getChildCount()==0
+						|| node.getContent().getNrPlayouts()<_nrSimulationsBeforeExpansion)
 			return node;
 
 		TreeNode<MonteCarloTreeSearchResult<MoveType>> bestNode = getBestVirtualChildNode(node);
+		if (_virtualLoss!=0)
+			bestNode.getContent().addVirtualLoss(_virtualLoss);
 
 		searchAdministration.playExplorationMove(bestNode.getContent().getMove());
 		if (bestNode.hashCode()==Checksum.UNINITIALIZED)
@@ -430,7 +456,8 @@ public class MonteCarloTreeSearch<MoveType extends Move>
 	}
     
     /**
-     * The result is passed up the tree.
+     * The result is passed up the tree. The virtual loss added to each node
+     * below the root on the way down is removed again.
      * 
      * @param node
      * @param win
@@ -439,10 +466,9 @@ public class MonteCarloTreeSearch<MoveType extends Move>
 	{
 		while (node!=null)
 		{
-			synchronized(node)
-			{
-				node.getContent().increasePlayouts(win);
-			}
+			if (_virtualLoss!=0 && node!=_rootNode)
+				node.getContent().removeVirtualLoss(_virtualLoss);
+			node.getContent().increasePlayouts(win);
 			node = node.getParent();
 		}
 	}
@@ -486,20 +512,29 @@ public class MonteCarloTreeSearch<MoveType extends Move>
 	protected TreeNode<MonteCarloTreeSearchResult<MoveType>> getBestVirtualChildNode(TreeNode<MonteCarloTreeSearchResult<MoveType>> node)
 	{
 		TreeNode<MonteCarloTreeSearchResult<MoveType>> bestNode = null;
+		MonteCarloTreeSearchResult<MoveType> result = node.getContent();
+		int nrChildren = node.getChildCount();
+		int bestIndex = result.getBestVirtualChildIndex();
 		
-		synchronized(node)
+		// Only re-evaluate all the children once every few visits.
+		if (bestIndex<nrChildren)
+		{
+			bestNode = node.getChildAt(bestIndex);
+			if ((bestNode.getContent().getNrPlayouts()&3)!=0)
+				return bestNode;
+			bestNode = null;
+		}
+
+		for (int i=0; i<nrChildren; i++)
 		{
-			int nrChildren = node.getChildCount();
-			for (int i=0; i<nrChildren; i++)
+			TreeNode<MonteCarloTreeSearchResult<MoveType>> nextNode = node.getChildAt(i);
+			if (bestNode==null || nextNode.getContent().isBetterVirtualResultThan(bestNode.getContent()))
 			{
-				TreeNode<MonteCarloTreeSearchResult<MoveType>> nextNode = node.getChildAt(i);
-				if (i==0 && (nextNode.getContent().getNrPlayouts()&3)!=0)
-					return nextNode;
-				if (bestNode==null || nextNode.getContent().isBetterVirtualResultThan(bestNode.getContent()))
-					bestNode = nextNode;
+				bestNode = nextNode;
+				bestIndex = i;
 			}
-			node.makeFirstChild(bestNode);
 		}
+		result.setBestVirtualChildIndex(bestIndex);
 		return bestNode;
 	}
 	
@@ -523,16 +558,16 @@ public class MonteCarloTreeSearch<MoveType extends Move>
 		}
 	}
 
-//	private TreeNode<MonteCarloTreeSearchResult<MoveType>> getMoveNode(MoveType move)
-//	{
-//		for (int i=0; i<_rootNode.getChildCount(); i++)
-//		{
-//			TreeNode<MonteCarloTreeSearchResult<MoveType>> nextNode = _rootNode.getChildAt(i);
-//			if (nextNode.getContent().getMove().equals(move))
-//				return nextNode;
-//		}
-//		return null; // Should never come here.
-//	}
+	private TreeNode<MonteCarloTreeSearchResult<MoveType>> getMoveNode(MoveType move)
+	{
+		for (int i=0; i<_rootNode.getChildCount(); i++)
+		{
+			TreeNode<MonteCarloTreeSearchResult<MoveType>> nextNode = _rootNode.getChildAt(i);
+			if (nextNode.getContent().getMove().equals(move))
+				return nextNode;
+		}
+		return null; // Not expanded yet.
+	}
 	
 	/* (non-Javadoc)
 	 * @see tesuji.games.general.search.Search#playMove(java.lang.Object)
@@ -540,22 +575,24 @@ public class MonteCarloTreeSearch<MoveType extends Move>
 	@SuppressWarnings("unchecked")
     public void playMove(MoveType move)
 	{
+		stopPondering();
 		_monteCarloAdministration.playMove((MoveType)move.cloneMove());
 
-//		TreeNode<MonteCarloTreeSearchResult<MoveType>> newRoot = getMoveNode(move);
+		// Keep what was already searched below the move played, for example while pondering.
+		TreeNode<MonteCarloTreeSearchResult<MoveType>> newRoot = getMoveNode(move);
 		
-//		if (newRoot==null)
+		if (newRoot==null)
 		{
 			reset();
 		}
-//		else
-//		{
-//			newRoot.getContent().setParentResult(null);
-//			newRoot.removeFromParent();
-//			_rootNode.recycle();
-//			_rootNode = newRoot;
-//			_logger.info("Remain "+_rootNode.getContent().getNrPlayouts()+" visits");
-//		}
+		else
+		{
+			newRoot.getContent().setParentResult(null);
+			newRoot.removeFromParent();
+			_searchThreads.recycleInBackground(_rootNode);
+			_rootNode = newRoot;
+			_logger.info("Remain "+_rootNode.getContent().getNrPlayouts()+" visits");
+		}
 	}
 	
 	/* (non-Javadoc)
@@ -570,16 +607,22 @@ public class MonteCarloTreeSearch<MoveType extends Move>
      */
     public void clear()
     {
+		stopPondering();
 		_monteCarloAdministration.clear();
 		reset();
 		_lastScore = 0.0;
 		DataProviderList.getSingleton().addDataProvider(new DefaultDoubleArrayProvider("Ownership", _ownershipArray, _monteCarloAdministration.getBoardSize()));
+		// A search gets cleared between games and before it's discarded, so let go of the threads until the next search.
+		_searchThreads.shutdown();
     }
     
     protected void reset()
     {
-		_rootNode.recycle();
-		initRoot();   
+    	// The tree being recycled and the new root may share the pools.
+    	_searchThreads.waitForRecycling();
+    	TreeNode<MonteCarloTreeSearchResult<MoveType>> oldRoot = _rootNode;
+		initRoot();
+		_searchThreads.recycleInBackground(oldRoot);
     }
     
     /*
@@ -635,6 +678,70 @@ public class MonteCarloTreeSearch<MoveType extends Move>
 		_useAMAF = useAMAF;
 	}
 
+	public int getVirtualLoss()
+	{
+		return _virtualLoss;
+	}
+
+	/**
+	 * @param virtualLoss - the number of lost playouts temporarily added to a node while
+	 * a search-thread is busy with a playout through it. Zero switches it off.
+	 */
+	public void setVirtualLoss(int virtualLoss)
+	{
+		_virtualLoss = virtualLoss;
+		if (_virtualLoss<0)
+			_virtualLoss = 0;
+		_searchProperties.setIntProperty(SearchProperties.VIRTUAL_LOSS,_virtualLoss);
+	}
+
+	public int getNrMergedTrees()
+	{
+		return _nrMergedTrees;
+	}
+
+	/**
+	 * @param nrMergedTrees - the number of trees, including this one, that search the same position
+	 * with their own share of the playouts and of which the root statistics get merged into this tree.
+	 */
+	public void setNrMergedTrees(int nrMergedTrees)
+	{
+		_nrMergedTrees = nrMergedTrees;
+		if (_nrMergedTrees<=0)
+			_nrMergedTrees = 1;
+	}
+
+	public int getRandomSeed()
+	{
+		return _randomSeed;
+	}
+
+	/**
+	 * Seed the administration, from which the administrations of the search-threads are cloned
+	 * in turn. So with a single thread and a fixed number of playouts the search is the same
+	 * in every run. The search-processes are created anew so that they get their seeds from it,
+	 * and the tree is cleared as it depends on the random numbers used before.
+	 * 
+	 * @param seed - zero, or not set, leaves the random streams seeded by the clock.
+	 */
+	public void setRandomSeed(int seed)
+	{
+		if (seed==Integer.MIN_VALUE)
+			seed = 0;
+		if (seed!=_randomSeed)
+		{
+			_randomSeed = seed;
+			if (_randomSeed!=0 && _monteCarloAdministration!=null)
+			{
+				stopPondering();
+				_monteCarloAdministration.setRandomSeed(_randomSeed);
+				_searchThreads.discardProcesses();
+				reset();
+			}
+		}
+		_searchProperties.setIntProperty(SearchProperties.RANDOM_SEED,_randomSeed);
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * @see java.beans.PropertyChangeListener#propertyChange(java.beans.PropertyChangeEvent)
@@ -654,6 +761,8 @@ public class MonteCarloTreeSearch<MoveType extends Move>
 		setSecondsPerMove(_searchProperties.getIntProperty(SearchProperties.TIME_PER_MOVE));
 		setNrProcessors(_searchProperties.getIntProperty(SearchProperties.NR_PROCESSORS));
 		setMinimumNrNodes(_searchProperties.getIntProperty(SearchProperties.NR_NODES));
+		setRandomSeed(_searchProperties.getIntProperty(SearchProperties.RANDOM_SEED));
+		setVirtualLoss(_searchProperties.getIntProperty(SearchProperties.VIRTUAL_LOSS));
 	}
 	
 	/*
@@ -700,16 +809,17 @@ public class MonteCarloTreeSearch<MoveType extends Move>
 	
 	private boolean reachedStopCondition()
 	{
-		if (_nrPlayouts>=_nodeLimit && _secondsPerMove==0)
+		if (_nrPlayouts>=_nodeLimit && (_secondsPerMove==0 || _timeUp))
 			return true;
 		
-		if ((_nrPlayouts&15)==0 && _nodeLimit>0 && _secondsPerMove==0)
+		if ((_nrPlayouts&15)==0 && _nodeLimit>0 && _secondsPerMove==0 && _rootNode.getContent().isExpanded())
 		{
 			TreeNode<MonteCarloTreeSearchResult<MoveType>> bestNode;
 			TreeNode<MonteCarloTreeSearchResult<MoveType>> secondBestNode;
 			bestNode = getBestChildNode(_rootNode);
 			secondBestNode = getSecondBestChildNode(_rootNode,bestNode);
-			if (secondBestNode!=null && bestNode.getContent().getNrPlayouts()-secondBestNode.getContent().getNrPlayouts()>_nodeLimit-_nrPlayouts)
+			// The playouts of merged trees are in the statistics, so count what remains to be done in all of them.
+			if (secondBestNode!=null && bestNode.getContent().getNrPlayouts()-secondBestNode.getContent().getNrPlayouts()>(_nodeLimit-_nrPlayouts)*_nrMergedTrees)
 				return true;
 /*    				if (_isTestVersion && _nrPlayouts > _nodeLimit/4)
 			{
@@ -735,22 +845,56 @@ public class MonteCarloTreeSearch<MoveType extends Move>
 		return _monteCarloAdministration.getClass().getSimpleName();
 	}
 
+	/*
+	 * (non-Javadoc)
+	 * @see tesuji.games.general.search.PonderingSearch#startPondering(byte)
+	 */
+	public void startPondering(byte startColor)
+	{
+		stopPondering();
+
+		_monteCarloAdministration.setColorToMove(startColor);
+		_nrPlayouts = 0;
+		_nodeLimit = SearchThreads.MAX_PONDER_PLAYOUTS;
+		// With the time up from the start, the processes stop by themselves at the node-limit.
+		_timeUp = true;
+		_searchThreads.startPondering(startColor, _nrThreads, _monteCarloAdministration.getBoardSize());
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see tesuji.games.general.search.PonderingSearch#stopPondering()
+	 */
+	public void stopPondering()
+	{
+		if (_searchThreads.stopPondering())
+			_logger.info("Pondered "+_nrPlayouts+" playouts");
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see tesuji.games.general.search.PonderingSearch#isPondering()
+	 */
+	public boolean isPondering()
+	{
+		return _searchThreads.isPondering();
+	}
+	
 	/**
 	 *	This is an inner class that implements Runnable so we can start
 	 *	as many SearchProcess instances as we have processors available.
 	 */
     class SearchProcess
-    	implements Runnable
+    	implements SearchThreads.Process
     {
     	byte _startColor;
-    	private boolean running;
+    	private volatile boolean running;
 		private MonteCarloAdministration<MoveType> _searchAdministration;
 		private double[] _weightMap;
 		private byte[] _colorMap;
     	
-    	public SearchProcess(byte startColor)
+    	public SearchProcess()
     	{
-    		_startColor = startColor;
     		running = false;
     		_searchAdministration = _monteCarloAdministration.createClone();
     		_weightMap = createDoubles();
@@ -759,7 +903,6 @@ public class MonteCarloTreeSearch<MoveType extends Move>
     	
     	public void run()
     	{
-    		running = true;
     		int nrDuplicateRuns = 0;
     		do
     		{
@@ -771,12 +914,11 @@ public class MonteCarloTreeSearch<MoveType extends Move>
    				
 	    		if (node != null)
 				{
-	    			if (node.getChildCount()==0)
+	    			// Only one thread creates the children, the others do a playout from the node meanwhile.
+	    			if (!node.getContent().isExpanded() && node.getContent().startExpansion())
 	    			{
-//	    				synchronized (node)
-                        {
-							expandNode(node,_searchAdministration);
-                        }
+	    				expandNode(node,_searchAdministration);
+	    				node.getContent().finishExpansion();
 	    			}
 	    			
 //	    			if (getIsTestVersion())
@@ -838,7 +980,7 @@ public class MonteCarloTreeSearch<MoveType extends Move>
 	    			{
 					boolean blackWins = _searchAdministration.playout();
 					_nrSimulatedMoves += _searchAdministration.getNrSimulatedMoves();
-					_nrPlayouts++;
+					_nrPlayoutsUpdater.incrementAndGet(MonteCarloTreeSearch.this);
 			    	adjustTreeValue(playoutNode, blackWins);
 
 			    	if (_useAMAF)
@@ -866,16 +1008,14 @@ public class MonteCarloTreeSearch<MoveType extends Move>
 						
 						while (playoutNode!=null)
 						{
-							synchronized(playoutNode)
-							{
-								if (playoutNode.getContent().getNrPlayouts()<MonteCarloTreeSearchResult.OWNERSHIP_MAXIMUM)
-									playoutNode.getContent().addOwnership(_searchAdministration.getBlackOwnership(), _searchAdministration.getWhiteOwnership());
-							}
+							if (playoutNode.getContent().getNrPlayouts()<MonteCarloTreeSearchResult.OWNERSHIP_MAXIMUM)
+								playoutNode.getContent().addOwnership(_searchAdministration.getBlackOwnership(), _searchAdministration.getWhiteOwnership());
 							
 					    	color = opposite(playoutNode.getContent().getMove().getColor());
 							boolean playerWins = (blackWins && color==BLACK) || (!blackWins && color==WHITE);
 							double score = playerWins ? MonteCarloTreeSearchResult.MAX_SCORE : MonteCarloTreeSearchResult.MIN_SCORE;
-							for (int i=0; i<playoutNode.getChildCount(); i++)
+							int nrChildren = playoutNode.getContent().isExpanded() ? playoutNode.getChildCount() : 0;
+							for (int i=0; i<nrChildren; i++)
 							{
 								TreeNode<MonteCarloTreeSearchResult<MoveType>> nextNode = playoutNode.getChildAt(i);
 								MonteCarloTreeSearchResult<MoveType> result = nextNode.getContent();
@@ -907,6 +1047,16 @@ public class MonteCarloTreeSearch<MoveType extends Move>
     		while (running);
     	}
     	
+    	/**
+    	 * Get ready for a new search. This gets called before the process is started,
+    	 * so a call to stop() can't get lost.
+    	 */
+    	public void prepare(byte startColor)
+    	{
+    		_startColor = startColor;
+    		running = true;
+    	}
+    	
     	public void stop()
     	{
     		running = false;
@@ -26,6 +26,9 @@
 
 package tesuji.games.go.search;
 
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
 import tesuji.core.util.SynchronizedArrayStack;
 import tesuji.games.general.GlobalParameters;
 import tesuji.games.general.Move;
@@ -56,21 +59,31 @@ public class MonteCarloTreeSearchResult<MoveType extends Move>
 //			1.00, 1.00, 1.00, 1.00, 1.00, 1.00, 1.00, 1.00
 //		};
 	
+	private static final long PLAYOUT = 1L;
+	private static final long WIN = 1L<<32;
+	private static final long PLAYOUT_MASK = 0xffffffffL;
+	
 	/**
-	 * The actual number of times a playout lead to a win.
-	 */
-	protected int _nrWins;
-	/**
-	 * The number of times a playout was performed.
+	 * The actual number of times a playout lead to a win in the high 32 bits and
+	 * the number of times a playout was performed in the low 32 bits. Packing them
+	 * in a single long allows both to be updated in one atomic operation, so that
+	 * search-threads never need to lock a node to update its statistics.
 	 */
-	protected int _nrPlayouts;
+	private volatile long _statistics;
 	
 	/**
-	 * The number of 'virtual' wins. This is usually based on the AMAF (All Moves As First)
+	 * The number of 'virtual' wins in the high 32 bits and 'virtual' playouts in the low
+	 * 32 bits, both stored as float bits. This is usually based on the AMAF (All Moves As First)
 	 * principle and may be weighted depending how deep the move was found in the playout.
 	 */
-	protected float _nrVirtualWins;
-	protected float _nrVirtualPlayouts;
+	private volatile long _virtualStatistics;
+	
+	@SuppressWarnings("rawtypes")
+	private static final AtomicLongFieldUpdater<MonteCarloTreeSearchResult> _statisticsUpdater =
+		AtomicLongFieldUpdater.newUpdater(MonteCarloTreeSearchResult.class, "_statistics");
+	@SuppressWarnings("rawtypes")
+	private static final AtomicLongFieldUpdater<MonteCarloTreeSearchResult> _virtualStatisticsUpdater =
+		AtomicLongFieldUpdater.newUpdater(MonteCarloTreeSearchResult.class, "_virtualStatistics");
 	
 	/**
 	 * The number of 'pattern' wins. This is based on how often the pattern was
@@ -80,7 +93,7 @@ public class MonteCarloTreeSearchResult<MoveType extends Move>
 	protected int _patternOccurrence;
 	
 	/**
-	 * Pre-computing the log() when _nrPlayouts changes is cheaper than doing
+	 * Pre-computing the log() when the number of playouts changes is cheaper than doing
 	 * it each time a UCT value is needed.
 	 */
 	protected float _logNrPlayouts;	
@@ -106,8 +119,27 @@ public class MonteCarloTreeSearchResult<MoveType extends Move>
 	
 	private MonteCarloTreeSearchResult<MoveType> _parentResult;
 	
-	private byte[] _blackOwnership;
-	private byte[] _whiteOwnership;
+	/**
+	 * Index of the child that was last selected as the best to explore. This replaces
+	 * re-ordering the children, which can't be done safely without locking the node.
+	 */
+	private volatile int _bestVirtualChildIndex;
+	
+	private volatile byte[] _blackOwnership;
+	private volatile byte[] _whiteOwnership;
+	
+	private static final int UNEXPANDED = 0;
+	private static final int EXPANDING = 1;
+	private static final int EXPANDED = 2;
+	
+	/**
+	 * Latch that lets only one search-thread create the children of the node. The children
+	 * may only be looked at once the state is EXPANDED, as the list holding them is not synchronized.
+	 */
+	private volatile int _expansionState;
+	@SuppressWarnings("rawtypes")
+	private static final AtomicIntegerFieldUpdater<MonteCarloTreeSearchResult> _expansionStateUpdater =
+		AtomicIntegerFieldUpdater.newUpdater(MonteCarloTreeSearchResult.class, "_expansionState");
 	
 	private SynchronizedArrayStack<MonteCarloTreeSearchResult<MoveType>> _owner;
 	
@@ -213,7 +245,7 @@ public class MonteCarloTreeSearchResult<MoveType extends Move>
 		// Trust the most visited node more. I don't know if it's all that relevant.
 		// I could probably just as easily argue it should be the other way around.
 		if (virtualResult==compareResult)
-			return (_nrPlayouts > compare.getNrPlayouts());	// TODO: check '<' instead of '>', see which plays better.
+			return (getNrPlayouts() > compare.getNrPlayouts());	// TODO: check '<' instead of '>', see which plays better.
 		
 		return false;
 	}
@@ -223,24 +255,72 @@ public class MonteCarloTreeSearchResult<MoveType extends Move>
 		byte color = _move.getColor();
 		boolean playerWins = (blackWins && color==BLACK) || (!blackWins && color==WHITE);
 		
+		int nrPlayouts;
 		if (playerWins)
 		{
-			_nrWins++;
-			_nrVirtualWins++;
+			nrPlayouts = (int) _statisticsUpdater.addAndGet(this, WIN+PLAYOUT);
+			increaseVirtualPlayouts(1.0, 1.0);
+		}
+		else
+		{
+			nrPlayouts = (int) _statisticsUpdater.addAndGet(this, PLAYOUT);
+			increaseVirtualPlayouts(0.0, 1.0);
 		}
-
-		_nrPlayouts++;
-		_nrVirtualPlayouts++;
 		
 		// Computing log() is expensive. I see no need to do it each and every time.
-		if ((_nrPlayouts&0x7)==0)
-			_logNrPlayouts = (float) Math.log(_nrPlayouts);
+		// When two threads race here the value may lag a little behind, which is harmless.
+		if ((nrPlayouts&0x7)==0)
+			_logNrPlayouts = (float) Math.log(nrPlayouts);
+	}
+
+	/**
+	 * Count a number of lost playouts while a search-thread is busy with a playout
+	 * through this node. This steers other threads towards different nodes until the
+	 * result is known, after which it gets removed again with removeVirtualLoss().
+	 * 
+	 * @param virtualLoss - the number of lost playouts to add.
+	 */
+	public void addVirtualLoss(int virtualLoss)
+	{
+		_statisticsUpdater.addAndGet(this, virtualLoss*PLAYOUT);
+		increaseVirtualPlayouts(0.0, virtualLoss);
+	}
+
+	public void removeVirtualLoss(int virtualLoss)
+	{
+		addVirtualLoss(-virtualLoss);
 	}
 
 	public void increaseVirtualPlayouts(double win_weight, double weight)
 	{
-		_nrVirtualWins += win_weight;
-		_nrVirtualPlayouts += weight;
+		long current;
+		long next;
+		do
+		{
+			current = _virtualStatistics;
+			next = packFloats(unpackWins(current)+(float)win_weight, unpackPlayouts(current)+(float)weight);
+		}
+		while (!_virtualStatisticsUpdater.compareAndSet(this, current, next));
+	}
+	
+	private void setVirtualPlayouts(float wins, float playouts)
+	{
+		_virtualStatistics = packFloats(wins,playouts);
+	}
+	
+	private static long packFloats(float wins, float playouts)
+	{
+		return ((long)Float.floatToRawIntBits(wins)<<32) | (Float.floatToRawIntBits(playouts)&PLAYOUT_MASK);
+	}
+	
+	private static float unpackWins(long packed)
+	{
+		return Float.intBitsToFloat((int)(packed>>>32));
+	}
+
+	private static float unpackPlayouts(long packed)
+	{
+		return Float.intBitsToFloat((int)packed);
 	}
 
 	/**
@@ -251,14 +331,27 @@ public class MonteCarloTreeSearchResult<MoveType extends Move>
 	 */
 	public void increasePlayouts(MonteCarloTreeSearchResult<MoveType> source)
 	{
-		_nrWins += source._nrWins;		
-		_nrPlayouts += source._nrPlayouts;
-		_logNrPlayouts = (float)Math.log(_nrPlayouts);
+		// Wins and playouts are packed the same way, so a single add updates both.
+		int nrPlayouts = (int) _statisticsUpdater.addAndGet(this, source._statistics);
+		_logNrPlayouts = (float)Math.log(nrPlayouts);
+	}
+	
+	/**
+	 * Increase the playout statistics with a number of wins and playouts done elsewhere.
+	 * This is used to merge the results of separate trees searching the same position.
+	 * 
+	 * @param nrWins
+	 * @param nrPlayouts
+	 */
+	public void increasePlayouts(int nrWins, int nrPlayouts)
+	{
+		int total = (int) _statisticsUpdater.addAndGet(this, ((long)nrWins<<32) + nrPlayouts);
+		_logNrPlayouts = (float)Math.log(total);
 	}
 	
 	public double computeResult()
 	{
-		if (_nrPlayouts==0)
+		if (getNrPlayouts()==0)
 			return (getVirtualWinRatio() + getRAVEValue()) * getOwnershipValue() + getUrgencyValue();
 
 		double beta = getBeta();
@@ -273,7 +366,7 @@ public class MonteCarloTreeSearchResult<MoveType extends Move>
 	 */
 	public double getUCTValue()
 	{
-		return _explorationFactor * Math.sqrt( getLogNrParentPlayouts() / (_nrPlayouts+1) );
+		return _explorationFactor * Math.sqrt( getLogNrParentPlayouts() / (getNrPlayouts()+1) );
 	}
 	
 	/**
@@ -287,7 +380,7 @@ public class MonteCarloTreeSearchResult<MoveType extends Move>
 	 */
 	public double getRAVEValue()
 	{
-		return _explorationFactor * Math.sqrt( getLogNrParentPlayouts() / (_nrVirtualPlayouts+1) );
+		return _explorationFactor * Math.sqrt( getLogNrParentPlayouts() / (getNrVirtualPlayouts()+1) );
 	}
 
 	public double getUrgencyValue()
@@ -314,10 +407,12 @@ public class MonteCarloTreeSearchResult<MoveType extends Move>
 	 */
 	public double getVirtualWinRatio()
 	{
-		if (_nrVirtualPlayouts == 0.0)
+		long virtualStatistics = _virtualStatistics;
+		float nrVirtualPlayouts = unpackPlayouts(virtualStatistics);
+		if (nrVirtualPlayouts == 0.0)
 			return getPatternRatio();
 
-		return ((double)_nrVirtualWins / (double)_nrVirtualPlayouts) + getPatternRatio();
+		return ((double)unpackWins(virtualStatistics) / (double)nrVirtualPlayouts) + getPatternRatio();
 	}
 	
 	/**
@@ -335,10 +430,12 @@ public class MonteCarloTreeSearchResult<MoveType extends Move>
 	 */
 	public double getWinRatio()
 	{
-		if (_nrPlayouts == 0)
+		long statistics = _statistics;
+		int nrPlayouts = (int) (statistics&PLAYOUT_MASK);
+		if (nrPlayouts == 0)
 			return 0.0;
 
-		return (double)_nrWins / (double)_nrPlayouts;
+		return (double)(int)(statistics>>>32) / (double)nrPlayouts;
 	}
 	
 	public double getOwnershipValue()
@@ -417,13 +514,14 @@ public class MonteCarloTreeSearchResult<MoveType extends Move>
 		_move = null;
 		
 		_parentResult = null;
-		_nrPlayouts = 0;
-		_nrWins = 0;
-		_nrVirtualPlayouts = 0.0f;
-		_nrVirtualWins = 0.0f;
+		_statistics = 0;
+		_virtualStatistics = 0;
+		_logNrPlayouts = 0.0f;
 		_patternSuccess = 0;
 		_patternOccurrence = 0;
 		_updateTimeStamp = -1;
+		_bestVirtualChildIndex = 0;
+		_expansionState = UNEXPANDED;
 		
 		_blackOwnership = null; // Maybe need to recycle at some point.
 		_whiteOwnership = null;
@@ -438,7 +536,7 @@ public class MonteCarloTreeSearchResult<MoveType extends Move>
     @Override
 	public String toString()
     {
-    	return _move.toSGF()+" wins="+_nrWins+" runs="+_nrPlayouts+
+    	return _move.toSGF()+" wins="+getNrWins()+" runs="+getNrPlayouts()+
     		" value = "+computeResult()+" RAVE="+getRAVEValue()+" virtual-ratio="+getVirtualWinRatio()+" uct="+getUCTValue()+" ratio="+getWinRatio();
     }
     
@@ -456,8 +554,7 @@ public class MonteCarloTreeSearchResult<MoveType extends Move>
     	
     	if (GlobalParameters.isTestVersion())
     	{
-    		_nrVirtualPlayouts = INITIAL_VISITS;
-    		_nrVirtualWins = INITIAL_WINS;
+    		setVirtualPlayouts(INITIAL_WINS,INITIAL_VISITS);
 
     		GoMove goMove = (GoMove)move;
     		double urgency = goMove.getUrgency()+2;
@@ -467,25 +564,39 @@ public class MonteCarloTreeSearchResult<MoveType extends Move>
     		if (visits>0 && urgency<1000)
     		{
         		double value = (wins * (wins/visits)) / Math.log(urgency);
-    			_nrVirtualPlayouts = (float)value;
-    			_nrVirtualWins = (float)value;
+    			setVirtualPlayouts((float)value,(float)value);
     		}
     	}
     }
 
     public int getNrWins()
     {
-    	return _nrWins;
+    	return (int) (_statistics>>>32);
     }
 
     public void setNrWins(int nrWins)
     {
-    	_nrWins = nrWins;
+		long current;
+		do
+		{
+			current = _statistics;
+		}
+		while (!_statisticsUpdater.compareAndSet(this, current, ((long)nrWins<<32) | (current&PLAYOUT_MASK)));
     }
 
     public int getNrPlayouts()
     {
-    	return _nrPlayouts;
+    	return (int) (_statistics&PLAYOUT_MASK);
+    }
+
+    public float getNrVirtualWins()
+    {
+    	return unpackWins(_virtualStatistics);
+    }
+
+    public float getNrVirtualPlayouts()
+    {
+    	return unpackPlayouts(_virtualStatistics);
     }
 
     public double getLogNrPlayouts()
@@ -513,6 +624,43 @@ public class MonteCarloTreeSearchResult<MoveType extends Move>
 		_updateTimeStamp = timeStamp;
 	}
 
+	/**
+	 * Claim the expansion of the node. Only one thread succeeds, the others should
+	 * continue without expanding instead of waiting for it.
+	 * 
+	 * @return whether the calling thread should create the children of the node.
+	 */
+	public boolean startExpansion()
+	{
+		return _expansionStateUpdater.compareAndSet(this, UNEXPANDED, EXPANDING);
+	}
+	
+	/**
+	 * Publish the children of the node after startExpansion() returned true.
+	 */
+	public void finishExpansion()
+	{
+		_expansionState = EXPANDED;
+	}
+	
+	/**
+	 * @return whether the children of the node are complete and can be used.
+	 */
+	public boolean isExpanded()
+	{
+		return _expansionState==EXPANDED;
+	}
+
+	public int getBestVirtualChildIndex()
+	{
+		return _bestVirtualChildIndex;
+	}
+
+	public void setBestVirtualChildIndex(int index)
+	{
+		_bestVirtualChildIndex = index;
+	}
+
 	public MonteCarloTreeSearchResult<MoveType> getParentResult()
     {
     	return _parentResult;
@@ -526,28 +674,44 @@ public class MonteCarloTreeSearchResult<MoveType extends Move>
 	public byte[] getBlackOwnership()
 	{
 		if (_blackOwnership==null)
-			_blackOwnership = GoArray.createBytes();
+			createOwnership();
 		return _blackOwnership;
 	}
 
 	public byte[] getWhiteOwnership()
 	{
 		if (_whiteOwnership==null)
-			_whiteOwnership = GoArray.createBytes();
+			createOwnership();
 		return _whiteOwnership;
 	}
 	
-	public void addOwnership(byte[] black, byte[] white)
+	private synchronized void createOwnership()
 	{
 		if (_blackOwnership==null)
-		{
 			_blackOwnership = GoArray.createBytes();
+		if (_whiteOwnership==null)
 			_whiteOwnership = GoArray.createBytes();
+	}
+	
+	/**
+	 * Add ownership information of a playout. The arrays are only allocated once, under lock,
+	 * after that the values are added without locking. An occasional lost increment when two
+	 * threads add at the same time is of no consequence for these statistics.
+	 */
+	public void addOwnership(byte[] black, byte[] white)
+	{
+		byte[] blackOwnership = _blackOwnership;
+		byte[] whiteOwnership = _whiteOwnership;
+		if (blackOwnership==null || whiteOwnership==null)
+		{
+			createOwnership();
+			blackOwnership = _blackOwnership;
+			whiteOwnership = _whiteOwnership;
 		}
 		for (int i=GoArray.FIRST; i<=GoArray.LAST; i++)
 		{
-			_blackOwnership[i] += black[i];
-			_whiteOwnership[i] += white[i];
+			blackOwnership[i] += black[i];
+			whiteOwnership[i] += white[i];
 		}
 	}
 
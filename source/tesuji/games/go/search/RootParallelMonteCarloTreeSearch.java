@@ -0,0 +1,562 @@
+/**
+ * Project: Tesuji Go Framework.<br>
+ * <br>
+ * <font color="#CC6600"><font size=-1> Copyright (c) 1985-2006 Mark Boon<br>
+ * All rights reserved.<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, and/or sell copies of the
+ * Software, and to permit persons to whom the Software is furnished to do so,
+ * provided that the above copyright notice(s) and this permission notice appear
+ * in all copies of the Software and that both the above copyright notice(s) and
+ * this permission notice appear in supporting documentation.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.<br>
+ * <br>
+ * <font color="#00000"><font size=+1>
+ * 
+ */
+
+
+package tesuji.games.go.search;
+
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.util.ArrayList;
+
+import org.apache.log4j.Logger;
+
+import tesuji.core.util.ArrayStack;
+
+import tesuji.games.general.Move;
+import tesuji.games.general.TreeNode;
+import tesuji.games.general.search.Search;
+import tesuji.games.general.search.SearchProperties;
+
+import tesuji.games.go.common.GoMove;
+import tesuji.games.go.monte_carlo.MonteCarloAdministration;
+import tesuji.games.go.util.GoArray;
+
+/**
+ * Root-parallel version of the UCT / Monte-Carlo search. Each search-thread owns a private
+ * tree, searched by a single-threaded MonteCarloTreeSearch, so the threads never share nodes.
+ * At a regular interval, and once more at the end of the search, the statistics of the moves
+ * at the root of each tree are merged into all the other trees. The move played is chosen
+ * from the merged statistics.
+ */
+public class RootParallelMonteCarloTreeSearch<MoveType extends Move>
+	implements Search<MoveType>, PropertyChangeListener
+{
+	private static Logger _logger = Logger.getLogger(RootParallelMonteCarloTreeSearch.class);
+	
+	private SearchProperties _searchProperties;
+	
+	protected MonteCarloAdministration<MoveType> _monteCarloAdministration;
+	protected ArrayList<MonteCarloTreeSearch<MoveType>> _trees;
+	protected int _secondsPerMove;
+	protected int _nrTrees = 1;
+	protected int _minimumNrNodes;
+	protected double _lastScore = 0.0;
+	protected double _explorationFactor = Math.sqrt(0.2);
+	protected int _nrSimulationsBeforeExpansion = 1;
+	protected boolean _useAMAF = false;
+	
+	/**
+	 * The seed the random streams of the administration and the trees are derived from,
+	 * zero when they're seeded by the clock.
+	 */
+	private int _randomSeed;
+	
+	/**
+	 * The number of milliseconds between merging the root statistics of the trees.
+	 */
+	protected int _mergeInterval = 100;
+	
+	/**
+	 * The threads the trees get searched in, one for each tree.
+	 */
+	private SearchThreadPool _treePool = new SearchThreadPool(getClass().getSimpleName());
+	
+	/**
+	 * The statistics of each tree at the last merge, indexed by tree and the
+	 * coordinate of the move. Anything above these numbers came from playouts
+	 * in the tree itself that were not shared yet.
+	 */
+	private int[][] _mergedWins;
+	private int[][] _mergedPlayouts;
+	private int[][] _newWins;
+	private int[][] _newPlayouts;
+	private int[] _totalWins;
+	private int[] _totalPlayouts;
+	
+	public RootParallelMonteCarloTreeSearch()
+	{
+		_totalWins = GoArray.createIntegers();
+		_totalPlayouts = GoArray.createIntegers();
+		setSearchProperties(new SearchProperties());
+	}
+	
+	public RootParallelMonteCarloTreeSearch(MonteCarloAdministration<MoveType> administration)
+	{
+		this();
+		setMonteCarloAdministration(administration);
+	}
+	
+	public void setMonteCarloAdministration(MonteCarloAdministration<MoveType> administration)
+	{
+		releaseTrees();
+		_monteCarloAdministration = administration;
+		_trees = null;
+		if (_randomSeed!=0)
+			_monteCarloAdministration.setRandomSeed(_randomSeed);
+	}
+	
+	/**
+	 * Create a single-threaded search with its own copy of the administration for each tree,
+	 * unless they already exist.
+	 */
+	protected void createTrees()
+	{
+		if (_trees!=null && _trees.size()==_nrTrees)
+			return;
+
+		releaseTrees();
+		_trees = new ArrayList<MonteCarloTreeSearch<MoveType>>(_nrTrees);
+		_mergedWins = new int[_nrTrees][];
+		_mergedPlayouts = new int[_nrTrees][];
+		_newWins = new int[_nrTrees][];
+		_newPlayouts = new int[_nrTrees][];
+		for (int t=0; t<_nrTrees; t++)
+		{
+			MonteCarloTreeSearch<MoveType> tree = new MonteCarloTreeSearch<MoveType>(_monteCarloAdministration.createClone());
+			tree.setNrProcessors(1);
+			// A tree is only searched by one thread, so virtual loss has no use.
+			tree.setVirtualLoss(0);
+			_trees.add(tree);
+			_mergedWins[t] = GoArray.createIntegers();
+			_mergedPlayouts[t] = GoArray.createIntegers();
+			_newWins[t] = GoArray.createIntegers();
+			_newPlayouts[t] = GoArray.createIntegers();
+		}
+		updateTrees();
+	}
+	
+	/**
+	 * Let go of the threads of the trees that are no longer going to be searched.
+	 */
+	private void releaseTrees()
+	{
+		if (_trees!=null)
+			for (MonteCarloTreeSearch<MoveType> tree : _trees)
+				tree.clear();
+		_treePool.shutdown();
+	}
+	
+	/**
+	 * Pass the search settings on to each of the trees.
+	 */
+	protected void updateTrees()
+	{
+		if (_trees==null)
+			return;
+		
+		int nrNodesPerTree = (_minimumNrNodes + _nrTrees - 1) / _nrTrees;
+		for (MonteCarloTreeSearch<MoveType> tree : _trees)
+		{
+			tree.setSecondsPerMove(_secondsPerMove);
+			tree.setMinimumNrNodes(nrNodesPerTree);
+			tree.setExplorationFactor(_explorationFactor);
+			tree.setNrSimulationsBeforeExpansion(_nrSimulationsBeforeExpansion);
+			tree.setUseAMAF(_useAMAF);
+			tree.setNrMergedTrees(_nrTrees);
+		}
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see tesuji.games.general.search.Search#doSearch(byte)
+	 */
+    public MoveType doSearch(byte startColor)
+		throws Exception
+	{
+		long time0 = System.currentTimeMillis();
+		
+		_monteCarloAdministration.setColorToMove(startColor);
+		createTrees();
+		for (int t=0; t<_nrTrees; t++)
+		{
+			GoArray.clear(_mergedWins[t]);
+			GoArray.clear(_mergedPlayouts[t]);
+		}
+		
+		// Search each tree in a thread of its own. The wildcard allows creating the array.
+		RootParallelMonteCarloTreeSearch<?>.TreeProcess[] treeProcesses = new RootParallelMonteCarloTreeSearch<?>.TreeProcess[_nrTrees];
+		for (int t=0; t<_nrTrees; t++)
+			treeProcesses[t] = new TreeProcess(_trees.get(t), startColor);
+		_treePool.start(treeProcesses);
+
+		// Merge the root statistics at a regular interval until all the trees are done.
+		while (!_treePool.waitForCompletion(System.currentTimeMillis()+_mergeInterval))
+			mergeRoots();
+		
+		for (int t=0; t<_nrTrees; t++)
+		{
+			Exception exception = treeProcesses[t].getException();
+			if (exception!=null)
+				throw exception;
+		}
+		
+		mergeRoots();
+		
+		TreeNode<MonteCarloTreeSearchResult<MoveType>> rootNode = _trees.get(0).getRootNode();
+		long time1 = System.currentTimeMillis();
+		_logger.info("Nr trees "+_nrTrees);
+		_logger.info("Nr root visits "+rootNode.getContent().getNrPlayouts());
+		_logger.info(""+((double)rootNode.getContent().getNrPlayouts()/(double)(time1-time0))+" kpos/sec");
+
+		TreeNode<MonteCarloTreeSearchResult<MoveType>> bestNode = _trees.get(0).getBestChildNode(rootNode);
+		if (bestNode==null)
+			return null;
+		if (bestNode.getContent().getMove().isPass())
+			_logger.info("PASS!");
+		_lastScore = bestNode.getContent().getWinRatio();
+
+		if (bestNode.getContent().isHopeless())
+			return _monteCarloAdministration.getMoveFactory().createResignMove(_monteCarloAdministration.getColorToMove());
+		return bestNode.getContent().getMove();
+	}
+    
+    /**
+     * Add the playouts done in each tree since the last merge to the moves at the root of all
+     * the other trees. The trees may still be searching while this happens, which is why only
+     * increments are added and never any values overwritten. The children of a root that's
+     * still being expanded are left alone until they're all there.
+     */
+    protected void mergeRoots()
+    {
+    	GoArray.clear(_totalWins);
+    	GoArray.clear(_totalPlayouts);
+    	
+    	for (int t=0; t<_nrTrees; t++)
+    	{
+    		TreeNode<MonteCarloTreeSearchResult<MoveType>> rootNode = _trees.get(t).getRootNode();
+    		GoArray.clear(_newWins[t]);
+    		GoArray.clear(_newPlayouts[t]);
+    		int nrChildren = rootNode.getContent().isExpanded() ? rootNode.getChildCount() : 0;
+    		for (int i=0; i<nrChildren; i++)
+    		{
+    			TreeNode<MonteCarloTreeSearchResult<MoveType>> childNode = rootNode.getChildAt(i);
+    			MonteCarloTreeSearchResult<MoveType> result = childNode.getContent();
+    			int xy = ((GoMove)result.getMove()).getXY();
+    			_newWins[t][xy] = result.getNrWins() - _mergedWins[t][xy];
+    			_newPlayouts[t][xy] = result.getNrPlayouts() - _mergedPlayouts[t][xy];
+    			_totalWins[xy] += _newWins[t][xy];
+    			_totalPlayouts[xy] += _newPlayouts[t][xy];
+    		}
+    	}
+    	
+    	for (int t=0; t<_nrTrees; t++)
+    	{
+    		TreeNode<MonteCarloTreeSearchResult<MoveType>> rootNode = _trees.get(t).getRootNode();
+    		int rootPlayouts = 0;
+    		int rootWins = 0;
+    		int nrChildren = rootNode.getContent().isExpanded() ? rootNode.getChildCount() : 0;
+    		for (int i=0; i<nrChildren; i++)
+    		{
+    			TreeNode<MonteCarloTreeSearchResult<MoveType>> childNode = rootNode.getChildAt(i);
+    			MonteCarloTreeSearchResult<MoveType> result = childNode.getContent();
+    			int xy = ((GoMove)result.getMove()).getXY();
+    			int wins = _totalWins[xy] - _newWins[t][xy];
+    			int playouts = _totalPlayouts[xy] - _newPlayouts[t][xy];
+    			if (playouts!=0)
+    			{
+    				result.increasePlayouts(wins, playouts);
+        			rootPlayouts += playouts;
+        			rootWins += playouts - wins; // The root is the other color.
+    			}
+    			_mergedWins[t][xy] += _totalWins[xy];
+    			_mergedPlayouts[t][xy] += _totalPlayouts[xy];
+    		}
+    		if (rootPlayouts!=0)
+    			rootNode.getContent().increasePlayouts(rootWins, rootPlayouts);
+    	}
+    }
+	
+	/*
+	 * (non-Javadoc)
+	 * @see tesuji.games.general.search.Search#getBestMovePath(tesuji.core.util.ArrayStack)
+	 */
+	public void getBestMovePath(ArrayStack<MoveType> moveList)
+	{
+		if (_trees!=null)
+			_trees.get(0).getBestMovePath(moveList);
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see tesuji.games.general.search.Search#getRootNode()
+	 */
+	public TreeNode<MonteCarloTreeSearchResult<MoveType>> getRootNode()
+	{
+		if (_trees==null)
+			return null;
+		return _trees.get(0).getRootNode();
+	}
+	
+	/* (non-Javadoc)
+	 * @see tesuji.games.general.search.Search#playMove(java.lang.Object)
+	 */
+	@SuppressWarnings("unchecked")
+    public void playMove(MoveType move)
+	{
+		// The move may belong to one of the trees, which get recycled when playing it.
+		MoveType moveCopy = (MoveType)move.cloneMove();
+		_monteCarloAdministration.playMove((MoveType)moveCopy.cloneMove());
+		if (_trees!=null)
+			for (MonteCarloTreeSearch<MoveType> tree : _trees)
+				tree.playMove(moveCopy);
+		moveCopy.recycle();
+	}
+	
+	/* (non-Javadoc)
+	 * @see tesuji.games.general.search.Search#takeBack()
+	 */
+	public void takeBack()
+	{
+	}
+
+	/* (non-Javadoc)
+     * @see tesuji.games.general.search.Search#clear()
+     */
+    public void clear()
+    {
+		_monteCarloAdministration.clear();
+		if (_trees!=null)
+			for (MonteCarloTreeSearch<MoveType> tree : _trees)
+				tree.clear();
+		_treePool.shutdown();
+		_lastScore = 0.0;
+    }
+    
+    /*
+     * (non-Javadoc)
+     * @see tesuji.games.general.search.Search#isGameFinished()
+     */
+    public boolean isGameFinished()
+    {
+		return (_monteCarloAdministration.isGameFinished());
+    }
+    
+    /*
+     * (non-Javadoc)
+     * @see tesuji.games.general.search.Search#getSearchProperties()
+     */
+	public SearchProperties getSearchProperties()
+	{
+		return _searchProperties;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see tesuji.games.general.search.Search#setSearchProperties(tesuji.games.general.search.SearchProperties)
+	 */
+	public void setSearchProperties(SearchProperties properties)
+	{
+		if (_searchProperties!=null)
+			_searchProperties.removePropertyChangeListener(this);
+		
+		_searchProperties = properties;
+		_searchProperties.addPropertyChangeListener(this);
+		parseSearchProperties();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see java.beans.PropertyChangeListener#propertyChange(java.beans.PropertyChangeEvent)
+	 */
+	public void propertyChange(PropertyChangeEvent event)
+	{
+		parseSearchProperties();
+		if (_monteCarloAdministration!=null)
+			_monteCarloAdministration.set(event.getPropertyName(),event.getNewValue().toString());
+		if (_trees!=null)
+			for (MonteCarloTreeSearch<MoveType> tree : _trees)
+				tree._monteCarloAdministration.set(event.getPropertyName(),event.getNewValue().toString());
+	}
+
+	public void parseSearchProperties()
+	{
+		setSecondsPerMove(_searchProperties.getIntProperty(SearchProperties.TIME_PER_MOVE));
+		setNrProcessors(_searchProperties.getIntProperty(SearchProperties.NR_PROCESSORS));
+		setMinimumNrNodes(_searchProperties.getIntProperty(SearchProperties.NR_NODES));
+		setRandomSeed(_searchProperties.getIntProperty(SearchProperties.RANDOM_SEED));
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see tesuji.games.general.search.Search#setSecondsPerMove(int)
+	 */
+	public void setSecondsPerMove(int seconds)
+	{
+		_secondsPerMove = seconds;
+		_searchProperties.setIntProperty(SearchProperties.TIME_PER_MOVE,_secondsPerMove);
+		updateTrees();
+	}
+	
+	/**
+	 * Set the number of trees, each of which is searched by a thread of its own.
+	 * 
+	 * @see tesuji.games.general.search.Search#setNrProcessors(int)
+	 */
+	public void setNrProcessors(int nrProcessors)
+	{
+		_nrTrees = nrProcessors;
+		if (_nrTrees<=0)
+			_nrTrees = 1;
+		_searchProperties.setIntProperty(SearchProperties.NR_PROCESSORS,_nrTrees);
+		updateTrees();
+	}
+
+	/**
+	 * Set the total number of playouts, which get divided over the trees.
+	 * 
+	 * @see tesuji.games.general.search.Search#setMinimumNrNodes(int)
+	 */
+	public void setMinimumNrNodes(int nrNodes)
+	{
+		_minimumNrNodes = nrNodes;
+		if (_minimumNrNodes<0)
+			_minimumNrNodes = 0;
+		_searchProperties.setIntProperty(SearchProperties.NR_NODES,_minimumNrNodes);
+		updateTrees();
+	}
+
+	public double getExplorationFactor()
+	{
+		return _explorationFactor;
+	}
+	
+	public void setExplorationFactor(double explorationFactor)
+	{
+		_explorationFactor = explorationFactor;
+		updateTrees();
+	}
+		
+	public int getNrSimulationsBeforeExpansion()
+	{
+		return _nrSimulationsBeforeExpansion;
+	}
+
+	public void setNrSimulationsBeforeExpansion(int nrSimulationsBeforeExpansion)
+	{
+		_nrSimulationsBeforeExpansion = nrSimulationsBeforeExpansion;
+		updateTrees();
+	}
+
+	public boolean getUseAMAF()
+	{
+		return _useAMAF;
+	}
+
+	public void setUseAMAF(boolean useAMAF)
+	{
+		_useAMAF = useAMAF;
+		updateTrees();
+	}
+
+	public int getRandomSeed()
+	{
+		return _randomSeed;
+	}
+
+	/**
+	 * Seed the administration, from which the administrations of the trees are cloned in turn.
+	 * So with a single tree and a fixed number of playouts the search is the same in every run.
+	 * With more trees it isn't, as the merging depends on how far each tree got at the time.
+	 * The trees are created anew so that they get their seeds from it.
+	 * 
+	 * @param seed - zero, or not set, leaves the random streams seeded by the clock.
+	 */
+	public void setRandomSeed(int seed)
+	{
+		if (seed==Integer.MIN_VALUE)
+			seed = 0;
+		if (seed!=_randomSeed)
+		{
+			_randomSeed = seed;
+			if (_randomSeed!=0 && _monteCarloAdministration!=null)
+			{
+				_monteCarloAdministration.setRandomSeed(_randomSeed);
+				releaseTrees();
+				_trees = null;
+			}
+		}
+		_searchProperties.setIntProperty(SearchProperties.RANDOM_SEED,_randomSeed);
+	}
+
+	public int getMergeInterval()
+	{
+		return _mergeInterval;
+	}
+
+	/**
+	 * @param mergeInterval - the number of milliseconds between merging the root statistics of the trees.
+	 */
+	public void setMergeInterval(int mergeInterval)
+	{
+		_mergeInterval = mergeInterval;
+		if (_mergeInterval<=0)
+			_mergeInterval = 1;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString()
+	{
+		return _monteCarloAdministration.getClass().getSimpleName()+" x "+_nrTrees;
+	}
+
+	/**
+	 *	Runs the search of one of the trees in a thread of its own.
+	 */
+    class TreeProcess
+    	implements Runnable
+    {
+    	private MonteCarloTreeSearch<MoveType> _tree;
+    	private byte _startColor;
+    	private Exception _exception;
+    	
+    	public TreeProcess(MonteCarloTreeSearch<MoveType> tree, byte startColor)
+    	{
+    		_tree = tree;
+    		_startColor = startColor;
+    	}
+    	
+    	public void run()
+    	{
+    		try
+    		{
+    			_tree.doSearch(_startColor);
+    		}
+    		catch (Exception exception)
+    		{
+    			_exception = exception;
+    		}
+    	}
+    	
+    	public Exception getException()
+    	{
+    		return _exception;
+    	}
+    }
+}
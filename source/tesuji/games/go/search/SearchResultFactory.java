@@ -103,14 +103,13 @@ public class SearchResultFactory
 	
 	private MonteCarloTreeSearchResult<GoMove> _createMonteCarloTreeSearchResult()
 	{
-		MonteCarloTreeSearchResult<GoMove> newResult;
-        if (mctsResultPool.isEmpty())
+		// Testing and popping needs to be one operation, as several search-threads use the same pool.
+		MonteCarloTreeSearchResult<GoMove> newResult = mctsResultPool.testAndPop();
+        if (newResult==null)
         {
         	newResult = new MonteCarloTreeSearchResult<GoMove>(mctsResultPool);
         	nrResults++;
         }
-        else
-        	newResult = mctsResultPool.pop();
         
         return newResult;
 	}
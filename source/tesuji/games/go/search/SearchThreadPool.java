@@ -0,0 +1,215 @@
+/**
+ * Project: Tesuji Go Framework.<br>
+ * <br>
+ * <font color="#CC6600"><font size=-1> Copyright (c) 1985-2006 Mark Boon<br>
+ * All rights reserved.<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, and/or sell copies of the
+ * Software, and to permit persons to whom the Software is furnished to do so,
+ * provided that the above copyright notice(s) and this permission notice appear
+ * in all copies of the Software and that both the above copyright notice(s) and
+ * this permission notice appear in supporting documentation.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.<br>
+ * <br>
+ * <font color="#00000"><font size=+1>
+ * 
+ */
+
+package tesuji.games.go.search;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A set of long-lived threads to run search-processes in. The threads are created once
+ * and then wait until a new search gets started, so a search doesn't have to pay for
+ * creating threads on every move. The search-processes are handed in by the search
+ * itself, so it can keep them (and the administrations they hold) from one move to the next.<br>
+ * <br>
+ * Each search-process runs until it decides to stop by itself, normally because it was told
+ * to stop by the search. The thread calling waitForCompletion() gets woken up as soon as all
+ * the processes finished, or when the deadline passed, whichever comes first.
+ */
+public class SearchThreadPool
+{
+	private static Logger _logger = Logger.getLogger(SearchThreadPool.class);
+	
+	private final String _name;
+	
+	private Thread[] _threads = new Thread[0];
+	private Runnable[] _processes = new Runnable[0];
+	
+	/**
+	 * Incremented for every search started, so that a thread can tell whether
+	 * it has a new search to run or got woken up for nothing.
+	 */
+	private int _searchNr;
+	private int _nrActive;
+	
+	public SearchThreadPool(String name)
+	{
+		_name = name;
+	}
+	
+	/**
+	 * Start running the search-processes, one in each thread. Threads get added
+	 * when there are more processes than the last time.
+	 * 
+	 * @param processes - the search-processes to run
+	 */
+	public synchronized void start(Runnable[] processes)
+	{
+		if (_nrActive!=0)
+			throw new IllegalStateException("Previous search still running.");
+
+		if (processes.length>_threads.length)
+		{
+			Thread[] threads = new Thread[processes.length];
+			System.arraycopy(_threads, 0, threads, 0, _threads.length);
+			for (int t=_threads.length; t<threads.length; t++)
+			{
+				threads[t] = new Thread(new Worker(t), _name+"-"+t);
+				threads[t].setDaemon(true);
+				threads[t].start();
+			}
+			_threads = threads;
+		}
+
+		_processes = processes;
+		_nrActive = processes.length;
+		_searchNr++;
+		notifyAll();
+	}
+	
+	/**
+	 * Wait until all the search-processes finished or the deadline passed.
+	 * 
+	 * @param deadline - time in milliseconds as returned by System.currentTimeMillis()
+	 * 
+	 * @return whether all the search-processes finished
+	 * 
+	 * @throws InterruptedException
+	 */
+	public synchronized boolean waitForCompletion(long deadline)
+		throws InterruptedException
+	{
+		long time = System.currentTimeMillis();
+		while (_nrActive!=0 && time<deadline)
+		{
+			wait(deadline-time);
+			time = System.currentTimeMillis();
+		}
+		return (_nrActive==0);
+	}
+	
+	/**
+	 * Wait until all the search-processes finished.
+	 * 
+	 * @throws InterruptedException
+	 */
+	public synchronized void join()
+		throws InterruptedException
+	{
+		while (_nrActive!=0)
+			wait();
+	}
+	
+	/**
+	 * Let all the threads end once the current search finished, so that a search that's
+	 * replaced or reset doesn't leave them waiting for good. When a search gets started
+	 * after this the pool creates new threads.
+	 */
+	public synchronized void shutdown()
+	{
+		_threads = new Thread[0];
+		notifyAll();
+	}
+	
+	private synchronized Runnable getNextProcess(int index, int lastSearchNr)
+		throws InterruptedException
+	{
+		while (!isShutDown(index) && (_searchNr==lastSearchNr || index>=_processes.length))
+		{
+			if (_searchNr!=lastSearchNr)
+				lastSearchNr = _searchNr; // Not needed for this search.
+			wait();
+		}
+		if (isShutDown(index))
+			return null;
+		return _processes[index];
+	}
+	
+	/**
+	 * @return whether the calling thread is no longer part of the pool.
+	 */
+	private boolean isShutDown(int index)
+	{
+		return (index>=_threads.length || _threads[index]!=Thread.currentThread());
+	}
+	
+	private synchronized void finished()
+	{
+		_nrActive--;
+		if (_nrActive==0)
+			notifyAll();
+	}
+	
+	private synchronized int getSearchNr()
+	{
+		return _searchNr;
+	}
+
+	/**
+	 * Runs the search-process with the same index as the thread each time a search is started.
+	 */
+	private class Worker
+		implements Runnable
+	{
+		private final int _index;
+		
+		Worker(int index)
+		{
+			_index = index;
+		}
+		
+		public void run()
+		{
+			// A thread added for a search that was just started needs to run in that search as well.
+			int searchNr = getSearchNr()-1;
+			try
+			{
+				while (true)
+				{
+					Runnable process = getNextProcess(_index, searchNr);
+					if (process==null)
+						return;
+					searchNr = getSearchNr();
+					try
+					{
+						process.run();
+					}
+					catch (Throwable exception)
+					{
+						_logger.error("Search-process in "+Thread.currentThread().getName()+" failed: "+exception, exception);
+					}
+					finally
+					{
+						finished();
+					}
+				}
+			}
+			catch (InterruptedException exception)
+			{
+				// Nothing to do but to let the thread end.
+			}
+		}
+	}
+}
@@ -0,0 +1,224 @@
+/**
+ * Project: Tesuji Go Framework.<br>
+ * <br>
+ * <font color="#CC6600"><font size=-1> Copyright (c) 1985-2006 Mark Boon<br>
+ * All rights reserved.<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, and/or sell copies of the
+ * Software, and to permit persons to whom the Software is furnished to do so,
+ * provided that the above copyright notice(s) and this permission notice appear
+ * in all copies of the Software and that both the above copyright notice(s) and
+ * this permission notice appear in supporting documentation.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.<br>
+ * <br>
+ * <font color="#00000"><font size=+1>
+ * 
+ */
+package tesuji.games.go.search;
+
+import tesuji.games.general.TreeNode;
+
+/**
+ * The threads of a Monte-Carlo tree-search: a pool with the search-processes that run
+ * in them, and a single thread to recycle the parts of the tree that are no longer needed.
+ * The search-processes are kept from one move to the next, together with their administrations,
+ * and only get created anew by createProcess() when the number of threads or the board-size changes.
+ */
+public abstract class SearchThreads
+{
+	/**
+	 * The maximum number of playouts while pondering, to put a limit on the memory used
+	 * when the opponent takes a long time.
+	 */
+	public static final int MAX_PONDER_PLAYOUTS = 1000000;
+	
+	/**
+	 * A search-process that can be run in a thread of the pool.
+	 */
+	public interface Process
+		extends Runnable
+	{
+		/**
+		 * Get ready for a new search. This gets called before the process is started,
+		 * so a call to stop() can't get lost.
+		 */
+		public void prepare(byte startColor);
+		public void stop();
+	}
+	
+	private SearchThreadPool _threadPool;
+	private SearchThreadPool _recycler;
+	private Process[] _processes;
+	private int _boardSize;
+	private volatile boolean _isPondering;
+	
+	public SearchThreads(String name)
+	{
+		_threadPool = new SearchThreadPool(name);
+		_recycler = new SearchThreadPool(name+"-recycler");
+	}
+	
+	/**
+	 * @return a new search-process to run in one of the threads.
+	 */
+	protected abstract Process createProcess();
+	
+	/**
+	 * Run a search-process in each thread of the pool.
+	 * 
+	 * @param startColor - the color to move first
+	 * @param nrThreads - the number of search-processes to run
+	 * @param boardSize - the size of the board searched, for which the processes have their administrations
+	 */
+	public void start(byte startColor, int nrThreads, int boardSize)
+	{
+		waitForRecycling();
+		if (_processes==null || _processes.length!=nrThreads || _boardSize!=boardSize)
+		{
+			_processes = new Process[nrThreads];
+			for (int t=0; t<nrThreads; t++)
+				_processes[t] = createProcess();
+			_boardSize = boardSize;
+		}
+		for (int t=0; t<nrThreads; t++)
+			_processes[t].prepare(startColor);
+		_threadPool.start(_processes);
+	}
+	
+	/**
+	 * Tell all the search-processes to stop.
+	 */
+	public void stop()
+	{
+		if (_processes!=null)
+			for (int t=0; t<_processes.length; t++)
+				_processes[t].stop();
+	}
+	
+	/**
+	 * @see SearchThreadPool#waitForCompletion(long)
+	 */
+	public boolean waitForCompletion(long deadline)
+		throws InterruptedException
+	{
+		return _threadPool.waitForCompletion(deadline);
+	}
+	
+	/**
+	 * @see SearchThreadPool#join()
+	 */
+	public void join()
+		throws InterruptedException
+	{
+		_threadPool.join();
+	}
+	
+	/**
+	 * Start searching while the opponent is thinking. The processes need to stop by themselves,
+	 * or be stopped by stopPondering().
+	 */
+	public void startPondering(byte startColor, int nrThreads, int boardSize)
+	{
+		_isPondering = true;
+		start(startColor, nrThreads, boardSize);
+	}
+	
+	/**
+	 * Stop the search-processes started by startPondering() and wait for them to finish.
+	 * 
+	 * @return false when there was no pondering going on.
+	 */
+	public boolean stopPondering()
+	{
+		if (!_isPondering)
+			return false;
+		
+		stop();
+		try
+		{
+			_threadPool.join();
+		}
+		catch (InterruptedException exception)
+		{
+			Thread.currentThread().interrupt();
+		}
+		_isPondering = false;
+		return true;
+	}
+	
+	public boolean isPondering()
+	{
+		return _isPondering;
+	}
+	
+	/**
+	 * Recycle a (sub-)tree that's no longer needed in a thread of its own, so that
+	 * playing a move returns right away. Since the pools of the moves in the tree
+	 * are not synchronized, the search-processes don't start until it's done.
+	 * 
+	 * @param node
+	 */
+	public void recycleInBackground(final TreeNode<?> node)
+	{
+		if (!waitForRecycling())
+			return; // Leave it to the garbage-collector.
+		
+		// The move of the root may come from the pool of the calling thread, which only that thread can use.
+		node.getContent().recycle();
+		node.setContent(null);
+		_recycler.start(new Runnable[] {
+			new Runnable()
+			{
+				public void run()
+				{
+					node.recycle();
+				}
+			}
+		});
+	}
+	
+	/**
+	 * @return false when interrupted before the recycling was done.
+	 */
+	public boolean waitForRecycling()
+	{
+		try
+		{
+			_recycler.join();
+			return true;
+		}
+		catch (InterruptedException exception)
+		{
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+	
+	/**
+	 * Drop the search-processes, so that new ones get created for the next search.
+	 */
+	public void discardProcesses()
+	{
+		_processes = null;
+	}
+	
+	/**
+	 * Let go of the threads until the next search.
+	 * 
+	 * @see SearchThreadPool#shutdown()
+	 */
+	public void shutdown()
+	{
+		_threadPool.shutdown();
+		_recycler.shutdown();
+	}
+}
@@ -0,0 +1,150 @@
+package tesuji.games.go.search;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import tesuji.games.go.util.GoArray;
+
+/**
+ * Fixed-size table of the MonteCarloHashMapResults of a MonteCarloHashMapSearch, looked up by the
+ * checksum of their position. The table is divided in buckets of a few entries. A position can only
+ * be stored in the bucket its checksum maps to, so when the bucket is full another entry in it is replaced.<br>
+ * <br>
+ * Which entry gets replaced is decided by its generation, its number of playouts and its depth.
+ * The generation is the number of moves played when the result was created, which is stored in its age.
+ * Results from a generation before the current one belong to positions before the move played
+ * and get replaced first. Otherwise the result with the fewest playouts is replaced, preferring
+ * the deepest one when equal. So moving on to the next move only takes setting the generation,
+ * instead of going through all the entries to remove the ones that are no longer needed.<br>
+ * <br>
+ * Results that get replaced are not recycled, as another search-thread may still be using it.
+ * They're left to the garbage-collector.
+ */
+public class TranspositionTable
+{
+	private static final int BUCKET_SIZE = 4;
+
+	/**
+	 * Rough estimate of the memory used by a MonteCarloHashMapResult, which is dominated by
+	 * its statistics of 22 bytes for each move to try, of which there can be one for each point.
+	 */
+	private static final int ENTRY_SIZE = 22*GoArray.MAX + 256;
+
+	private final AtomicReferenceArray<MonteCarloHashMapResult> _entries;
+	private final int _bucketMask;
+	private volatile int _generation;
+
+	/**
+	 * @param megabytes - the amount of memory the results in the table may roughly use.
+	 */
+	public TranspositionTable(int megabytes)
+	{
+		long nrEntries = ((long)megabytes*1024L*1024L) / ENTRY_SIZE;
+		int nrBuckets = 1;
+		while ((long)nrBuckets*2*BUCKET_SIZE<=nrEntries && nrBuckets<(1<<26))
+			nrBuckets *= 2;
+		_entries = new AtomicReferenceArray<MonteCarloHashMapResult>(nrBuckets*BUCKET_SIZE);
+		_bucketMask = nrBuckets-1;
+	}
+
+	public int getCapacity()
+	{
+		return _entries.length();
+	}
+
+	public int getGeneration()
+	{
+		return _generation;
+	}
+
+	/**
+	 * Start a new generation, after which the results from earlier ones are the first to be replaced.
+	 *
+	 * @param generation - the number of moves played.
+	 */
+	public void setGeneration(int generation)
+	{
+		_generation = generation;
+	}
+
+	public MonteCarloHashMapResult get(long checksum)
+	{
+		int start = getBucket(checksum);
+		for (int i=start+BUCKET_SIZE; --i>=start;)
+		{
+			MonteCarloHashMapResult entry = _entries.get(i);
+			if (entry!=null && entry.getChecksum()==checksum)
+				return entry;
+		}
+		return null;
+	}
+
+	/**
+	 * Store a result, unless another thread stored a result for the same position first.
+	 *
+	 * @param result
+	 *
+	 * @return the result stored in the table for the position, which is not necessarily the one passed.
+	 */
+	public MonteCarloHashMapResult putIfAbsent(MonteCarloHashMapResult result)
+	{
+		long checksum = result.getChecksum();
+		int start = getBucket(checksum);
+		while (true)
+		{
+			int victim = -1;
+			MonteCarloHashMapResult victimEntry = null;
+			for (int i=start; i<start+BUCKET_SIZE; i++)
+			{
+				MonteCarloHashMapResult entry = _entries.get(i);
+				if (entry==null)
+				{
+					if (victim<0 || victimEntry!=null)
+					{
+						victim = i;
+						victimEntry = null;
+					}
+				}
+				else if (entry.getChecksum()==checksum)
+					return entry;
+				else if (victim<0 || (victimEntry!=null && isBetterToReplace(entry,victimEntry)))
+				{
+					victim = i;
+					victimEntry = entry;
+				}
+			}
+			if (_entries.compareAndSet(victim, victimEntry, result))
+				return result;
+			// Another thread changed the bucket meanwhile, look at it again.
+		}
+	}
+
+	private boolean isBetterToReplace(MonteCarloHashMapResult entry, MonteCarloHashMapResult compare)
+	{
+		int generation = _generation;
+		boolean isOld = entry.getAge()<generation;
+		boolean isCompareOld = compare.getAge()<generation;
+		if (isOld!=isCompareOld)
+			return isOld;
+		if (entry.getPlayouts()!=compare.getPlayouts())
+			return entry.getPlayouts()<compare.getPlayouts();
+		return entry.getAge()>compare.getAge();
+	}
+
+	/**
+	 * Remove and recycle all the results. Only call this while no search-thread is using the table.
+	 */
+	public void clear()
+	{
+		for (int i=_entries.length(); --i>=0;)
+		{
+			MonteCarloHashMapResult entry = _entries.getAndSet(i, null);
+			if (entry!=null)
+				entry.recycle();
+		}
+	}
+
+	private int getBucket(long checksum)
+	{
+		return ((int)(checksum^(checksum>>>32)) & _bucketMask) * BUCKET_SIZE;
+	}
+}
@@ -101,7 +101,7 @@ implements BoardModelListener
 	 */
 	public GetaReader(LadderReader ladder)
 	{
-		this(19,ladder);
+		this(GoArray.MAX_BOARD_SIZE,ladder);
 	}
 	
 	/**
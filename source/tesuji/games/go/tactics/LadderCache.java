@@ -0,0 +1,201 @@
+/**
+ * Project: Tesuji Go Framework.<br>
+ * <br>
+ * <font color="#CC6600"><font size=-1> Copyright (c) 1985-2006 Mark Boon<br>
+ * All rights reserved.<br>
+ * <br>
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, and/or sell copies of the
+ * Software, and to permit persons to whom the Software is furnished to do so,
+ * provided that the above copyright notice(s) and this permission notice appear
+ * in all copies of the Software and that both the above copyright notice(s) and
+ * this permission notice appear in supporting documentation.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY,
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR
+ * IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.<br>
+ * <br>
+ * <font color="#00000"><font size=+1>
+ *
+ */
+package tesuji.games.go.tactics;
+
+import tesuji.games.go.util.BoardMarker;
+import tesuji.games.go.util.FourCursor;
+import tesuji.games.go.util.IntStack;
+
+import static tesuji.games.go.util.GoArray.*;
+import static tesuji.games.general.ColorConstant.*;
+import static tesuji.games.go.tactics.TacticsConstant.*;
+
+/**
+ * Cache for the ladders read by LadderReader.wouldBeLadder().<br>
+ * <br>
+ * There's an entry for each point and color to move, which holds the ko-point the ladder was read with,
+ * the result and the points the reading depended on together with their value at the time.
+ * An entry stays valid as long as none of those points changed, so a ladder doesn't get read again
+ * when moves are played elsewhere. Since the values are checked when looking up a ladder, rather than
+ * the entries being invalidated when the board changes, the cache works with whatever board-array
+ * the ladder-reader is given, like the one shared with an administration that gets reset after every playout.<br>
+ * <br>
+ * A cache is not thread-safe and should belong to a single ladder-reader.
+ */
+public class LadderCache
+{
+	private byte[]		results =			new byte[MAX*2];
+	private int[]		koPoints =			new int[MAX*2];
+	private int[]		koPointsAfter =		new int[MAX*2];
+	private int[]		lastLadderMoves =	new int[MAX*2];
+	private int[][]		dependencies =		new int[MAX*2][];
+	private byte[][]	values =			new byte[MAX*2][];
+	private int[]		nrDependencies =	new int[MAX*2];
+
+	private BoardMarker	dependencyMarker =	new BoardMarker();
+
+	private int			nrLookups;
+	private int			nrHits;
+
+	public LadderCache()
+	{
+		clear();
+	}
+
+	/**
+	 * Remove all the entries.
+	 */
+	public void clear()
+	{
+		for (int i=0; i<results.length; i++)
+			results[i] = RESULT_UNDEFINED;
+	}
+
+	private static int getIndex(int xy, byte color)
+	{
+		return (color==BLACK)? xy*2 : xy*2+1;
+	}
+
+	/**
+	 * Look up the result of a ladder.
+	 *
+	 * @param xy is the coordinate of the move.
+	 * @param color is the color of the move.
+	 * @param koPoint is the ko-point the ladder is read with.
+	 * @param board is the position to read the ladder in.
+	 * @return the result of the ladder, or RESULT_UNDEFINED when it's not in the cache
+	 * or when any of the points it depended on changed.
+	 */
+	public int get(int xy, byte color, int koPoint, byte[] board)
+	{
+		nrLookups++;
+		int index = getIndex(xy, color);
+		int result = results[index];
+		if (result==RESULT_UNDEFINED || koPoints[index]!=koPoint)
+			return RESULT_UNDEFINED;
+
+		int[] points = dependencies[index];
+		byte[] pointValues = values[index];
+		for (int i=nrDependencies[index]; --i>=0;)
+		{
+			if (board[points[i]]!=pointValues[i])
+			{
+				results[index] = RESULT_UNDEFINED;
+				return RESULT_UNDEFINED;
+			}
+		}
+		nrHits++;
+		return result;
+	}
+
+	/**
+	 * @return the last move read for the entry found by get().
+	 */
+	public int getLastLadderMove(int xy, byte color)
+	{
+		return lastLadderMoves[getIndex(xy, color)];
+	}
+
+	/**
+	 * @return the ko-point the ladder-reader was left with after reading the entry found by get().
+	 */
+	public int getKoPointAfter(int xy, byte color)
+	{
+		return koPointsAfter[getIndex(xy, color)];
+	}
+
+	/**
+	 * Store the result of a ladder.
+	 *
+	 * @param xy is the coordinate of the move.
+	 * @param color is the color of the move.
+	 * @param koPoint is the ko-point the ladder was read with.
+	 * @param koPointAfter is the ko-point the ladder-reader was left with.
+	 * @param result is the result of the ladder.
+	 * @param lastLadderMove is the last move read.
+	 * @param readPoints are the points of which the reading looked at the point itself and its neighbours.
+	 * @param board is the position the ladder was read in, which must be the same as before reading.
+	 */
+	public void put(int xy, byte color, int koPoint, int koPointAfter, int result, int lastLadderMove, IntStack readPoints, byte[] board)
+	{
+		int index = getIndex(xy, color);
+		int maxSize = readPoints.getSize()*5;
+		if (dependencies[index]==null || dependencies[index].length<maxSize)
+		{
+			dependencies[index] = new int[maxSize];
+			values[index] = new byte[maxSize];
+		}
+		int[] points = dependencies[index];
+		byte[] pointValues = values[index];
+		int nrPoints = 0;
+
+		dependencyMarker.getNewMarker();
+		for (int i=readPoints.getSize(); --i>=0;)
+		{
+			int readXY = readPoints.get(i);
+			if (dependencyMarker.notSet(readXY))
+			{
+				dependencyMarker.set(readXY);
+				points[nrPoints] = readXY;
+				pointValues[nrPoints++] = board[readXY];
+			}
+			if (board[readXY]==EDGE)
+				continue;
+			for (int n=0; n<4; n++)
+			{
+				int neighbourXY = FourCursor.getNeighbour(readXY, n);
+				if (dependencyMarker.notSet(neighbourXY))
+				{
+					dependencyMarker.set(neighbourXY);
+					points[nrPoints] = neighbourXY;
+					pointValues[nrPoints++] = board[neighbourXY];
+				}
+			}
+		}
+
+		results[index] = (byte)result;
+		koPoints[index] = koPoint;
+		koPointsAfter[index] = koPointAfter;
+		lastLadderMoves[index] = lastLadderMove;
+		nrDependencies[index] = nrPoints;
+	}
+
+	/**
+	 * @return the number of times get() was called.
+	 */
+	public int getNrLookups()
+	{
+		return nrLookups;
+	}
+
+	/**
+	 * @return the number of times get() found a valid entry.
+	 */
+	public int getNrHits()
+	{
+		return nrHits;
+	}
+}
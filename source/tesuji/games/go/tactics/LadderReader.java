@@ -78,10 +78,15 @@ public class LadderReader
 	private IntStack	libertyStack =		ArrayFactory.createIntStack();
 
 	private byte[]	dirtyMap = createBytes();
+
+	private LadderCache	ladderCache;
+	private boolean		recordReadPoints;	// Set while reading a ladder to store in the cache.
+	private IntStack	readPoints =		ArrayFactory.createIntStack();
+	private BoardMarker	readMarker =		new BoardMarker();
 	
 	public LadderReader()
 	{
-		this(19);
+		this(MAX_BOARD_SIZE);
 	}
 
 	/**
@@ -137,6 +142,37 @@ public class LadderReader
 		return libertyStack;
 	}
 
+	public LadderCache getLadderCache()
+	{
+		return ladderCache;
+	}
+
+	/**
+	 * Set a cache for the results of wouldBeLadder(). It's null by default,
+	 * so that nothing is recorded when there's little chance of reading the same ladder twice.
+	 * 
+	 * @param cache
+	 */
+	public void setLadderCache(LadderCache cache)
+	{
+		ladderCache = cache;
+	}
+
+	/**
+	 * Record that the reading looked at a point and its neighbours, when
+	 * reading a ladder to store in the cache.
+	 * 
+	 * @param xy
+	 */
+	private void addReadPoint(int xy)
+	{
+		if (recordReadPoints && readMarker.notSet(xy))
+		{
+			readMarker.set(xy);
+			readPoints.push(xy);
+		}
+	}
+
 	/* Recursive version. It's usually slower than the non-recursive version below, but it can depend on the CPU.
 	final int getNlib(int startXY, int max, byte color)
 	{
@@ -227,6 +263,7 @@ public class LadderReader
 		{
 			int xy = toDoList.pop();
 			libertyLabels.set(xy);
+			addReadPoint(xy);
 			int left = left(xy);
 			byte boardLeft = board[left];
 			if (boardLeft==EMPTY && libertyLabels.notSet(left))
@@ -293,6 +330,7 @@ public class LadderReader
 	{
 //		if (xy==PASS)
 //			return true; 					// Pass is always legal.
+		addReadPoint(xy);
 		if (board[xy]!=EMPTY)
 			return false;					// Occupied.
 		if (getNlib(xy,1,colorToMove)!=0)
@@ -352,6 +390,7 @@ public class LadderReader
 
 		ladderMarks[xy] = ladderDepth;
 		dirtyMap[xy] = 1;
+		addReadPoint(xy);
 		
 		for (int n=3; n>=0; n--)
 		{
@@ -397,6 +436,7 @@ public class LadderReader
 	 */
 	private void makeMove(int xy)
 	{
+		addReadPoint(xy);
 		board[xy] = colorToMove;
 		koPoint = UNDEFINED_COORDINATE;
 		
@@ -504,8 +544,10 @@ public class LadderReader
 
 		// Check if the situation is suitable for a shortcut.
 		if (!isNeighbour(l1,position1)
-			|| board[l1-direction1]!=chasingColor
-			|| board[l1+direction2-direction1]!=EMPTY
+			|| board[l1-direction1]!=chasingColor)
+				return ILLEGAL;
+		addReadPoint(l1+direction2-direction1);
+		if (board[l1+direction2-direction1]!=EMPTY
 			|| getNlib(l1-direction1,3,chasingColor)<3
 			|| board[position1+direction2+direction2]!=EMPTY)
 				return ILLEGAL;
@@ -523,6 +565,9 @@ public class LadderReader
 			dirtyMap[position1] = 1;
 			int d = direction1; direction1 = direction2; direction2 = d;
 			steps++;
+			addReadPoint(position2);
+			if (board[position2+direction1]==EMPTY && board[position2+direction2]==EMPTY)
+				addReadPoint(position1+direction2+direction2);
 		}
 		while (board[position2+direction1]==EMPTY
 			&& board[position2+direction2]==EMPTY
@@ -691,6 +736,8 @@ public class LadderReader
 		// one of them makes three liberties, a shortcut is tried.
 		if (!isNeighbour(l1,l2))
 		{
+			addReadPoint(l1);
+			addReadPoint(l2);
 			if (board[left(l1)] != EMPTY)
 				nrOccupiedNeighbours1++;
 			if (board[right(l1)] != EMPTY)
@@ -766,6 +813,7 @@ public class LadderReader
 	 */
 	private void removeChain(int xy)
 	{
+		addReadPoint(xy);
 		int left = left(xy);
 		int right = right(xy);
 		int above = above(xy);
@@ -1123,7 +1171,8 @@ public class LadderReader
 
 	/**
 	 * See if a move at a certain point would be immediately captured in a
-	 * ladder.
+	 * ladder. When a LadderCache is set, a ladder that was read before is
+	 * only read again when a point it depended on changed.
 	 * 
 	 * @param xy is the coordinate of where to move.
 	 * @param color is the color of the move
@@ -1158,10 +1207,32 @@ public class LadderReader
 			return CAN_CATCH;
 		if (nLib>2)
 			return CANNOT_CATCH;
-		
+
+		if (ladderCache==null)
+		{
+			board[xy] = color;
+			int result = tryLadder(xy);
+			board[xy] = EMPTY;
+			return result;
+		}
+
+		int result = ladderCache.get(xy, color, koPoint, board);
+		if (result!=RESULT_UNDEFINED)
+		{
+			lastLadderMove = ladderCache.getLastLadderMove(xy, color);
+			koPoint = ladderCache.getKoPointAfter(xy, color);
+			return result;
+		}
+
+		int ko = koPoint;
+		readMarker.getNewMarker();
+		readPoints.clear();
+		recordReadPoints = true;
 		board[xy] = color;
-		int result = tryLadder(xy);
+		result = tryLadder(xy);
 		board[xy] = EMPTY;
+		recordReadPoints = false;
+		ladderCache.put(xy, color, ko, koPoint, result, lastLadderMove, readPoints, board);
 		return result;
 	}
 
@@ -0,0 +1,130 @@
+package tesuji.games.go.util;
+
+/**
+ * Stack of the checksums of the positions played, used to check for super-ko.<br>
+ * <br>
+ * Next to the stack the checksums are kept in a small open-addressed hash-table, so that checking
+ * whether a position occurred before takes constant time instead of going through the whole stack.
+ * The table holds for each checksum its index in the stack plus one, zero meaning an empty slot.
+ * Since checksums are only ever removed in the reverse order in which they were pushed, removing
+ * one only takes clearing the slot it was put in: no checksum pushed after it can have probed past it.
+ */
+public class ChecksumStack
+{
+	/**
+	 * The maximum number of checksums on the stack, which is the same as for the large LongStack.
+	 */
+	public static final int CAPACITY = 1100;
+
+	/**
+	 * A power of two of at least three times the capacity, so the table is never more than a third full.
+	 */
+	private static final int TABLE_SIZE = 4096;
+	private static final int TABLE_MASK = TABLE_SIZE-1;
+
+	private int _size;
+	private final long[] _stack;
+	/**
+	 * The slot in the table each checksum on the stack was put in.
+	 */
+	private final int[] _slots;
+	private final int[] _table;
+
+	public ChecksumStack()
+	{
+		_stack = new long[CAPACITY];
+		_slots = new int[CAPACITY];
+		_table = new int[TABLE_SIZE];
+	}
+
+	private static int getSlot(long checksum)
+	{
+		return (int)(checksum^(checksum>>>32)) & TABLE_MASK;
+	}
+
+	public void push(long checksum)
+	{
+		int slot = getSlot(checksum);
+		while (_table[slot]!=0)
+			slot = (slot+1) & TABLE_MASK;
+		_stack[_size] = checksum;
+		_slots[_size] = slot;
+		_size++;
+		_table[slot] = _size;
+	}
+
+	public long pop()
+	{
+		_size--;
+		_table[_slots[_size]] = 0;
+		return _stack[_size];
+	}
+
+	public long peek()
+	{
+		return _stack[_size-1];
+	}
+
+	public long get(int index)
+	{
+		return _stack[index];
+	}
+
+	public int getSize()
+	{
+		return _size;
+	}
+
+	public boolean isEmpty()
+	{
+		return _size==0;
+	}
+
+	/**
+	 * Pop the checksums above the given size.
+	 *
+	 * @param newSize - should not be greater than the current size.
+	 */
+	public void setSize(int newSize)
+	{
+		while (_size>newSize)
+			pop();
+	}
+
+	public void clear()
+	{
+		setSize(0);
+	}
+
+	/**
+	 * @param checksum
+	 *
+	 * @return whether the checksum is on the stack.
+	 */
+	public boolean contains(long checksum)
+	{
+		for (int slot=getSlot(checksum); _table[slot]!=0; slot = (slot+1) & TABLE_MASK)
+		{
+			if (_stack[_table[slot]-1]==checksum)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Make this a copy of the source, which takes a number of steps proportional
+	 * to the sizes of both stacks rather than the size of the table.
+	 *
+	 * @param source
+	 */
+	public void copyFrom(ChecksumStack source)
+	{
+		clear();
+		int size = source._size;
+		System.arraycopy(source._stack, 0, _stack, 0, size);
+		System.arraycopy(source._slots, 0, _slots, 0, size);
+		for (int i=0; i<size; i++)
+			_table[_slots[i]] = i+1;
+		_size = size;
+	}
+}
@@ -25,9 +25,7 @@
  */
 package tesuji.games.go.util;
 
-import tesuji.games.model.BoardChange;
 import tesuji.games.model.BoardChangeSupport;
-import tesuji.games.model.BoardChangeFactory;
 import tesuji.games.model.BoardModel;
 import tesuji.games.model.BoardModelListener;
 
@@ -84,10 +82,7 @@ public class DefaultBoardModel
 		{
 			byte oldValue = _array[xy];
 			_array[xy] = value;
-			
-			BoardChange boardChange = BoardChangeFactory.createBoardChange(xy, value, oldValue);
-			_boardchangeSupport.sendBoardChange(boardChange);
-			boardChange.recycle();
+			_boardchangeSupport.sendChange(xy, value, oldValue);
 		}
 		else
 			_array[xy] = value;		
@@ -96,17 +91,7 @@ public class DefaultBoardModel
 	@Override
 	public void set(int x, int y, byte value)
 	{
-		if (_boardchangeSupport.hasListeners())
-		{
-			byte oldValue = _array[toXY(x,y)];
-			_array[toXY(x,y)] = value;
-			
-			BoardChange boardChange = BoardChangeFactory.createBoardChange(x, y, value, oldValue);
-			_boardchangeSupport.sendBoardChange(boardChange);
-			boardChange.recycle();
-		}
-		else
-			_array[toXY(x,y)] = value;		
+		set(toXY(x,y), value);
 	}
 	
 	/* (non-Javadoc)
@@ -35,12 +35,24 @@ import tesuji.games.model.BoardModel;
  *	This class defines arrays used for a Go-board.
  *	All coordinates are coded such that x,y translates to x+y*WIDTH.
  *	There are methods to create and clear arrays of the appropriate size
- *	and a lot of utility methods to manipulate coordinates.
+ *	and a lot of utility methods to manipulate coordinates.<br>
+ *	<br>
+ *	The geometry of the arrays is fixed once at start-up by the system-property
+ *	tesuji.maxBoardSize (for example -Dtesuji.maxBoardSize=19). When it's not set
+ *	the arrays are sized for 9x9, which keeps them as small as possible. Any board-size
+ *	up to the maximum can be played, larger sizes are rejected by createBoardArray().
+ *	The values are computed only once so the JIT still treats them as constants.
  */
 public class GoArray
 {
-	/** Width of a 'row'. */
-	public static final int MAX_BOARD_SIZE = 9;
+	/** Name of the system-property that sets the maximum board-size. */
+	public static final String MAX_BOARD_SIZE_PROPERTY = "tesuji.maxBoardSize";
+	/** Smallest board-size supported. */
+	public static final int MIN_BOARD_SIZE = 1;
+	/** Largest board-size that can be set through MAX_BOARD_SIZE_PROPERTY. */
+	public static final int LIMIT_BOARD_SIZE = 19;
+	/** Largest board-size the arrays can hold. */
+	public static final int MAX_BOARD_SIZE = readMaxBoardSize();
 	/** Width of a 'row'. */
 	public static final int WIDTH = MAX_BOARD_SIZE+1;
 	/** Width of a 'row'. */
@@ -55,6 +67,34 @@ public class GoArray
 	public static final int ILLEGAL_VALUE = Integer.MIN_VALUE;
 	
 	private static byte[][] rowArrays = new byte[WIDTH][0];
+	
+	/**
+	 * Read the maximum board-size from the system-properties.
+	 * 
+	 * @return the maximum board-size, 9 if the property is not set.
+	 */
+	private static int readMaxBoardSize()
+	{
+		int size = Integer.getInteger(MAX_BOARD_SIZE_PROPERTY, 9);
+		if (size<MIN_BOARD_SIZE || size>LIMIT_BOARD_SIZE)
+			throw new IllegalArgumentException("Property "+MAX_BOARD_SIZE_PROPERTY+" should be between "
+				+MIN_BOARD_SIZE+" and "+LIMIT_BOARD_SIZE+", found "+size);
+		return size;
+	}
+	
+	/**
+	 * Check whether a board-size fits in the arrays created by this class.
+	 * 
+	 * @param size
+	 * 
+	 * @throws IllegalArgumentException when the size is not supported.
+	 */
+	public static final void checkBoardSize(int size)
+	{
+		if (size<MIN_BOARD_SIZE || size>MAX_BOARD_SIZE)
+			throw new IllegalArgumentException("Unacceptable board-size "+size+". The maximum is "+MAX_BOARD_SIZE
+				+", start with -D"+MAX_BOARD_SIZE_PROPERTY+"=<size> to play on larger boards.");
+	}
 
 //	private static IntStack toDoList = new IntStack();
 //	private static BoardMarker marker = new BoardMarker();
@@ -448,11 +488,12 @@ public class GoArray
 	 * around the board-points. The size of the array is always the same, but
 	 * the points not used are marked with the value EDGE.
 	 * 
-	 * @param size is the board-size used. Maximum value is 19
+	 * @param size is the board-size used. Maximum value is MAX_BOARD_SIZE
 	 * @return byte[]
 	 */
 	public static final byte[] createBoardArray(int size)
 	{
+		checkBoardSize(size);
 		byte[] board = createBytes();
 
 		for (int i=0; i<MAX; i++)
@@ -480,11 +521,12 @@ public class GoArray
 	 * minimize memory use, the array is reused for each board-size so make sure
 	 * the array never gets used to store other data.<br>
 	 * 
-	 * @param size is the board-size used. Maximum value is 19
+	 * @param size is the board-size used. Maximum value is MAX_BOARD_SIZE
 	 * @return byte[]
 	 */
 	public static final byte[] createRowArray(int size)
 	{
+		checkBoardSize(size);
 		if (rowArrays[size].length!=0)
 			return rowArrays[size];
 
@@ -58,7 +58,7 @@ public class GoGameProperties
 	{
 		super();
 
-		setIntProperty(BOARDSIZE, 19);
+		setIntProperty(BOARDSIZE, GoArray.MAX_BOARD_SIZE);
 		setIntProperty(HANDICAP, 1);
 		setDoubleProperty(KOMI, 7.5);
 		setProperty(RULES,CHINESE_RULES_VALUE);
@@ -31,8 +31,6 @@ public class ProbabilityMap
 		_rowSum[0] = new double[GoArray.WIDTH];
 		_rowSum[1] = new double[GoArray.WIDTH];
 		_total = new double[2];
-
-		reset();
 	}
 	
 	public double getWeight(int xy, byte color)
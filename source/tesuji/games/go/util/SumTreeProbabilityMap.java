@@ -0,0 +1,254 @@
+package tesuji.games.go.util;
+
+import tesuji.core.util.MersenneTwisterFast;
+import tesuji.games.go.common.GoConstant;
+
+import static tesuji.games.general.ColorConstant.BLACK;
+
+/**
+ * ProbabilityMap that keeps the weights of each color in a Fenwick-tree (also called binary indexed tree).
+ * Both changing a weight and picking a coordinate take a number of steps logarithmic in the number of points,
+ * instead of scanning the rows and the points within a row.<br>
+ * <br>
+ * The weights are stored as fixed-point numbers in a long, so adding and subtracting the same
+ * weight always leaves exactly what was there before. The sums don't drift like they do with doubles,
+ * so a weight or total that should be zero is really zero.
+ */
+public class SumTreeProbabilityMap
+	extends ProbabilityMap
+{
+	/**
+	 * The number of fixed-point units in a weight of 1.0. A power of two, so that
+	 * converting a weight back to a double and then to fixed-point again is exact.
+	 */
+	private static final double ONE = 1<<20;
+	private static final long FIXED_DEFAULT = toFixedPoint(DEFAULT);
+
+	private MersenneTwisterFast _random;
+
+	private long[][] _weights;
+	/**
+	 * The Fenwick-trees, which are 1-based: the weight of xy is accounted for at index xy+1.
+	 */
+	private long[][] _tree;
+	private long[] _total;
+	private final int _size;
+	private final int _highestBit;
+
+	public SumTreeProbabilityMap(MersenneTwisterFast randomNumberGenerator)
+	{
+		super(randomNumberGenerator);
+		_random = randomNumberGenerator;
+		_size = GoArray.MAX;
+		int highestBit = 1;
+		while (highestBit*2<=_size)
+			highestBit *= 2;
+		_highestBit = highestBit;
+		_weights = new long[2][GoArray.MAX];
+		_tree = new long[2][_size+1];
+		_total = new long[2];
+	}
+
+	private static long toFixedPoint(double weight)
+	{
+		return Math.round(weight*ONE);
+	}
+
+	private static double toDouble(long weight)
+	{
+		return weight/ONE;
+	}
+
+	private void update(int i, int xy, long delta)
+	{
+		_weights[i][xy] += delta;
+		_total[i] += delta;
+		long[] tree = _tree[i];
+		for (int index=xy+1; index<=_size; index += index & -index)
+			tree[index] += delta;
+	}
+
+	/**
+	 * Change the weight of both colors by the same amount, in a single pass through the trees.
+	 */
+	private void update(int xy, long delta)
+	{
+		_weights[0][xy] += delta;
+		_weights[1][xy] += delta;
+		_total[0] += delta;
+		_total[1] += delta;
+		long[] blackTree = _tree[0];
+		long[] whiteTree = _tree[1];
+		for (int index=xy+1; index<=_size; index += index & -index)
+		{
+			blackTree[index] += delta;
+			whiteTree[index] += delta;
+		}
+	}
+
+	@Override
+	public double getWeight(int xy, byte color)
+	{
+		return toDouble((color==BLACK)?_weights[0][xy]:_weights[1][xy]);
+	}
+
+	@Override
+	public void add(int xy, double weight)
+	{
+		assert(weight>0.0);
+		update(xy,toFixedPoint(weight));
+		assert(isConsistent());
+	}
+
+	@Override
+	public void add(int xy, double weight, byte color)
+	{
+		assert(weight>0.0);
+		update((color==BLACK)? 0 : 1, xy, toFixedPoint(weight));
+	}
+
+	@Override
+	public void add(int xy)
+	{
+		update(xy,FIXED_DEFAULT);
+		assert(isConsistent());
+	}
+
+	@Override
+	public void subtract(int xy, double weight)
+	{
+		update(xy,-toFixedPoint(weight));
+		if (_weights[0][xy]<0 || _weights[1][xy]<0)
+			throw new IllegalStateException();
+		assert(isConsistent());
+	}
+
+	@Override
+	public void subtract(int xy, double weight, byte color)
+	{
+		int i = (color==BLACK)? 0 : 1;
+		long fixedWeight = toFixedPoint(weight);
+		// Same as ProbabilityMap, a subtraction that would make the weight negative is ignored.
+		if (_weights[i][xy]>=fixedWeight)
+			update(i,xy,-fixedWeight);
+		assert(isConsistent());
+	}
+
+	@Override
+	public void subtract(int xy, int urgency)
+	{
+		subtract(xy,urgency*DEFAULT);
+	}
+
+	@Override
+	public void clear(int xy)
+	{
+		update(0,xy,-_weights[0][xy]);
+		update(1,xy,-_weights[1][xy]);
+	}
+
+	@Override
+	public double clear(int xy, byte color)
+	{
+		int i = (color==BLACK)? 0 : 1;
+		long weight = _weights[i][xy];
+		update(i,xy,-weight);
+		return toDouble(weight);
+	}
+
+	@Override
+	public void reset(int xy, byte color)
+	{
+		int i = (color==BLACK)? 0 : 1;
+		update(i,xy,FIXED_DEFAULT-_weights[i][xy]);
+	}
+
+	@Override
+	public void reset()
+	{
+		for (int i=0; i<2; i++)
+		{
+			for (int xy=0; xy<GoArray.MAX; xy++)
+				_weights[i][xy] = 0;
+			for (int index=0; index<=_size; index++)
+				_tree[i][index] = 0;
+			_total[i] = 0;
+		}
+	}
+
+	/**
+	 * Walk down the tree to find the first coordinate where the running sum of the weights
+	 * exceeds a random value between 0 and the total.
+	 */
+	@Override
+	public int getCoordinate(byte color)
+	{
+		int i = (color==BLACK)? 0 : 1;
+		if (_total[i]<=0)
+			return GoConstant.PASS;
+
+		long remaining = (long)(_random.nextDouble() * _total[i]);
+		assert(remaining<_total[i]);
+		long[] tree = _tree[i];
+		int index = 0;
+		for (int step=_highestBit; step!=0; step>>=1)
+		{
+			int next = index+step;
+			if (next<=_size && tree[next]<=remaining)
+			{
+				index = next;
+				remaining -= tree[next];
+			}
+		}
+		// The index found is the last one with a running sum not exceeding the random value,
+		// so the coordinate is the one after it, which is at index+1 and thus is xy==index.
+		assert(_weights[i][index]!=0);
+		return index;
+	}
+
+	@Override
+	public void copyFrom(ProbabilityMap source)
+	{
+		SumTreeProbabilityMap sourceMap = (SumTreeProbabilityMap)source;
+		for (int i=0; i<2; i++)
+		{
+			System.arraycopy(sourceMap._weights[i],0,_weights[i],0,GoArray.MAX);
+			System.arraycopy(sourceMap._tree[i],0,_tree[i],0,_size+1);
+			_total[i] = sourceMap._total[i];
+		}
+	}
+
+	@Override
+	public boolean isConsistent()
+	{
+		for (int i=GoArray.FIRST; i<=GoArray.LAST; i++)
+		{
+			assert (_weights[0][i]!=0 || _weights[1][i]==0);
+			assert (_weights[0][i]==0 || _weights[1][i]!=0);
+		}
+		return true;
+	}
+
+	@Override
+	public String toString()
+	{
+		StringBuilder out = new StringBuilder();
+		out.append('\n');
+		for (int row=1; row<GoArray.WIDTH; row++)
+		{
+			for (int color=0; color<2; color++)
+			{
+				for (int col=1; col<GoArray.WIDTH; col++)
+				{
+					int xy = GoArray.toXY(col, row);
+					out.append(toDouble(_weights[color][xy]));
+					out.append('\t');
+				}
+				out.append("\t\t");
+			}
+			out.append('\n');
+		}
+		out.append('\n');
+		return out.toString();
+	}
+}
@@ -73,7 +73,8 @@ public class BoardChange
 	
 	public void recycle()
 	{
-		_owner.push(this);
+		if (_owner!=null) // The one re-used by BoardChangeSupport doesn't belong to a pool.
+			_owner.push(this);
 	}
 
 	// These are package scope so they can only be set by the factory.
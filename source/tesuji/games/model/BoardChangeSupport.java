@@ -29,41 +29,61 @@ import java.util.ArrayList;
 
 /**
  * This class implements the basic functionality required for sending board
- * changes as defined by BoardModel.
+ * changes as defined by BoardModel.<br>
+ * <br>
+ * Changes are sent for every stone placed or removed, also during playouts.
+ * So sending a change doesn't allocate or lock anything: the listeners are kept in a plain
+ * array and a single BoardChange object is re-used for every change. This means a listener
+ * must not hold on to the BoardChange it receives, but copy what it needs from it.
  */
 public class BoardChangeSupport
 {
     private boolean _multipleChanges;
-    private ArrayList<BoardModelListener> _listeners = new ArrayList<BoardModelListener>();
+    private BoardModelListener[] _listeners = new BoardModelListener[0];
     private ArrayList<BoardChange> _eventQueue = new ArrayList<BoardChange>();
-    private boolean _hasListeners = false;
+    private BoardChange _change = new BoardChange(null);
     
     public final void addBoardModelListener(BoardModelListener listener)
     {
     	assert(listener!=null);
-    	_hasListeners = true;
-        if (!_listeners.contains(listener))
-            _listeners.add(listener);
-        else
-        	_hasListeners = true;
+    	for (int i=0; i<_listeners.length; i++)
+    		if (_listeners[i]==listener)
+    			return;
+    	
+    	BoardModelListener[] listeners = new BoardModelListener[_listeners.length+1];
+    	System.arraycopy(_listeners, 0, listeners, 0, _listeners.length);
+    	listeners[_listeners.length] = listener;
+    	_listeners = listeners;
     }
     
     public final void removeBoardModelListener(BoardModelListener listener)
     {
-        _listeners.remove(listener);
-        if (_listeners.size()==0)
-			_hasListeners = false;
+    	for (int i=0; i<_listeners.length; i++)
+    	{
+    		if (_listeners[i]==listener)
+    		{
+    	    	BoardModelListener[] listeners = new BoardModelListener[_listeners.length-1];
+    	    	System.arraycopy(_listeners, 0, listeners, 0, i);
+    	    	System.arraycopy(_listeners, i+1, listeners, i, listeners.length-i);
+    	    	_listeners = listeners;
+    	    	return;
+    		}
+    	}
     }
     
     public final boolean hasListeners()
     {
-    	return _hasListeners;
+    	return _listeners.length!=0;
     }
 
+    /**
+     * Send a change that was created by the BoardChangeFactory. It's
+     * up to the caller to recycle it, unless multiple changes are being queued.
+     */
     public void sendBoardChange(BoardChange change)
     {
     	if (_multipleChanges)
-    		_eventQueue.add(change);
+    		_eventQueue.add(BoardChangeFactory.createClone(change));
     	else
     		sendChange(change);
     }
@@ -78,24 +98,35 @@ public class BoardChangeSupport
         if (_multipleChanges==false)
         {
         	for (int i=0; i<_eventQueue.size(); i++)
-        		sendChange(_eventQueue.get(i));
+        	{
+        		BoardChange change = _eventQueue.get(i);
+        		sendChange(change);
+        		change.recycle();
+        	}
         	_eventQueue.clear();
         }
     }
 
     private void sendChange(BoardChange changeEvent)
     {
-        for (BoardModelListener listener : _listeners)
-            listener.changeBoard(changeEvent);
+    	BoardModelListener[] listeners = _listeners;
+        for (int i=0; i<listeners.length; i++)
+            listeners[i].changeBoard(changeEvent);
     }
     
     public void sendChange(int xy, byte value, byte oldValue)
     {
-    	if (_hasListeners)
+    	if (_listeners.length!=0)
     	{
-			BoardChange boardChange = BoardChangeFactory.createBoardChange(xy, value, oldValue);
-			sendBoardChange(boardChange);
-			boardChange.recycle();
+    		if (_multipleChanges)
+    			_eventQueue.add(BoardChangeFactory.createBoardChange(xy, value, oldValue));
+    		else
+    		{
+    			_change.setXY(xy);
+    			_change.setNewValue(value);
+    			_change.setOldValue(oldValue);
+    			sendChange(_change);
+    		}
     	}
     }
 }